@@ -0,0 +1,144 @@
+// File: AugmentingPathEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+
+/**
+ * The Ford-Fulkerson algorithm of Graph.optimise() (shortest augmenting
+ * paths found by breadth first search) running on the arrays of a
+ * FlowNetwork. Instead of clearing a visited flag on every node before each
+ * search, each search gets a new stamp and a node counts as visited when it
+ * carries the current stamp.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class AugmentingPathEngine implements FlowEngine {
+    /**
+     * The queue used in the breadth first searches.
+     */
+    protected int[] queue;
+    /**
+     * The arc leading to each node in the augmenting path, stored as the
+     * arc leaving the node towards its predecessor.
+     */
+    protected int[] previous;
+    /**
+     * The maximum augment flow for the path up until each node.
+     */
+    protected long[] augment;
+    /**
+     * The stamp of the last search that visited each node.
+     */
+    protected int[] stamp;
+    /**
+     * The stamp of the current search.
+     */
+    protected int pass;
+
+    /**
+     * Make sure the work arrays fit the given network. They are kept
+     * between calls so that solving networks of the same size repeatedly
+     * does not allocate.
+     *
+     * @param net   Network about to be solved
+     */
+    protected void prepare(FlowNetwork net) {
+        if (queue==null || queue.length<net.nodeCount) {
+            queue=new int[net.nodeCount];
+            previous=new int[net.nodeCount];
+            augment=new long[net.nodeCount];
+            stamp=new int[net.nodeCount];
+            pass=0;
+        }
+    }
+
+    /**
+     * Finds a shortest augmenting path in the network using a breadth first
+     * search. It also records the path into the previous array.
+     *
+     * @param net   Network to search
+     * @return      The maximum flow for the augmenting path, 0 if none exists
+     */
+    protected long findPath(FlowNetwork net) {
+        int[] first,head,mate; // arrays of the network
+        long[] residual; // residual capacities of the network
+        int qHead,qTail; // queue pointers
+        int u,v,a; // general purpose nodes and arc
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        residual=net.residual;
+
+        // A fresh stamp marks every node unvisited
+        if (++pass==Integer.MAX_VALUE) {
+            Arrays.fill(stamp,0);
+            pass=1;
+        }
+        stamp[net.source]=pass;
+        augment[net.source]=Long.MAX_VALUE;
+        queue[0]=net.source;
+        qHead=0;
+        qTail=1;
+
+        while(qHead<qTail) {
+            u=queue[qHead++];
+            for(a=first[u];a<first[u+1];a++) {
+                v=head[a];
+                if (stamp[v]!=pass && residual[a]>0) {
+                    augment[v]=Math.min(augment[u],residual[a]);
+                    stamp[v]=pass;
+                    previous[v]=mate[a]; // keep track of the path
+                    if (v==net.sink) return augment[v];
+                    queue[qTail++]=v;
+                }
+            }
+        }
+
+        // No augmentable path found.
+        return 0;
+    }
+
+    /**
+     * Using the path recorded by findPath() this updates the residual
+     * capacities of the path with the augmenting flow.
+     *
+     * @param net           Network holding the path
+     * @param augmentation  the size of the augmenting flow
+     */
+    protected void augmentPath(FlowNetwork net, long augmentation) {
+        int p,a; // general purpose node and arc
+
+        // retrace the path starting at the sink
+        p=net.sink;
+        while(p!=net.source) {
+            a=previous[p];
+            net.residual[a]+=augmentation;
+            net.residual[net.mate[a]]-=augmentation;
+            p=net.head[a];
+        }
+    }
+
+    /**
+     * Augment along shortest paths until no augmenting path remains.
+     *
+     * @param net   Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork net) {
+        long augmentation,flow; // value of an augmentation and their sum
+
+        prepare(net);
+        flow=0;
+        while((augmentation=findPath(net))!=0) {
+            augmentPath(net,augmentation);
+            flow+=augmentation;
+        }
+
+        return flow;
+    }
+}
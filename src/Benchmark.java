@@ -0,0 +1,452 @@
+// File: Benchmark.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+import java.lang.management.*;
+
+/**
+ * Compares the running time of Graph.optimise() with that of the FlowEngines
+ * on one or more configuration files, for example:
+ * <PRE>
+ * java Benchmark -engine pseudoflow -engine dinic -runs 5 portfolio.txt
+ * </PRE>
+ * Without -engine options every engine known to Main is measured. Every
+ * solve is repeated as often as -runs says (default 3) and the fastest run
+ * is reported, together with whether its output is identical to that of
+ * Graph.optimise(). The times only cover solving and printing; reading the
+ * file and freezing the graph are not included. The last column gives the
+ * speed-up over the sequential push-relabel engine in cut only mode, which
+ * shows how well the parallel engine scales with -threads (by default the
+ * number of processors).
+ * <P>
+ * Instead of files, instances can be generated from parameters given as
+ * comma separated lists, every combination giving one instance:
+ * <PRE>
+ * java Benchmark -nodes 1000,10000 -density 2,8 -range 100 -depth 1,20
+ * </PRE>
+ * Here -nodes is the number of technologies, -density the number of
+ * dependencies per technology, -range the largest profit or cost and
+ * -depth the number of layers the technologies are spread over, every
+ * dependency leading to the layer before so that dependency chains are at
+ * most that long (1 for dependencies between any two technologies).
+ * -seed fixes the random generator (default 1), so that the same
+ * parameters always give the same instance.
+ * <P>
+ * Every engine is first run -warmup times (default 1) without measuring, to
+ * let the JIT compile it. For the measured runs the average time, the
+ * throughput in solves per second, the bytes allocated by the measuring
+ * thread per solve and the number and time of garbage collections are
+ * reported as well. Engines running threads of their own allocate on
+ * those threads too, which is not counted. With "-json name" the results
+ * are also written to a file as JSON, for tracking them over time.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Benchmark {
+    /**
+     * The sequential engine the speed-up is measured against.
+     */
+    protected static final String BASELINE="pushrelabel-cut";
+    /**
+     * Prefix of the names of generated instances.
+     */
+    protected static final String GENERATED="generated:";
+    /**
+     * The output of the last call to solve(), without the timing.
+     */
+    protected static String output;
+    /**
+     * Bytes allocated by the last call to solve(), -1 when unknown.
+     */
+    protected static long allocated;
+    /**
+     * Garbage collections during the last call to solve().
+     */
+    protected static long collections;
+    /**
+     * Time spent collecting garbage during the last call to solve() in
+     * milliseconds.
+     */
+    protected static long collectionTime;
+    /**
+     * Seed of the random generator for generated instances.
+     */
+    protected static long seed=1;
+
+    /**
+     * Generate a random instance. Technologies are numbered in the order
+     * they are spread over the layers, so the i-th technology lies in layer
+     * i*depth/nodes.
+     *
+     * @param nodes     Number of technologies
+     * @param density   Number of dependencies per technology
+     * @param range     Largest profit or cost
+     * @param depth     Number of layers
+     * @param s         Seed of the random generator
+     * @return          The graph of the instance
+     */
+    protected static Graph generate(int nodes, int density, int range,
+                                                        int depth, long s) {
+        Random random; // the random generator
+        Graph G; // the graph being made
+        int[] start; // first technology of every layer
+        int i,l,f,t,m; // technologies, layer and dependency count
+
+        random=new Random(s);
+        G=new Graph();
+        for(i=0;i<nodes;i++) {
+            G.addTechnology("t"+i,random.nextInt(range+1),
+                                                    random.nextInt(range+1));
+        }
+
+        start=new int[depth+1];
+        for(l=0;l<=depth;l++) start[l]=(int)((long)l*nodes/depth);
+        m=(depth==1)?(density*nodes):(density*(nodes-start[1]));
+        for(i=0;i<m;i++) {
+            if (depth==1) {
+                f=random.nextInt(nodes);
+                t=random.nextInt(nodes);
+            } else {
+                l=1+random.nextInt(depth-1);
+                f=start[l]+random.nextInt(start[l+1]-start[l]);
+                t=start[l-1]+random.nextInt(start[l]-start[l-1]);
+            }
+            if (f!=t) G.addDependency("t"+f,"t"+t);
+        }
+
+        return G;
+    }
+
+    /**
+     * Make the graph of an instance, either by reading a configuration file
+     * or by generating it from the parameters in its name.
+     *
+     * @param src   Name of a configuration file or generated instance
+     * @return      The graph of the instance
+     */
+    protected static Graph load(String src) {
+        String[] p; // parameters of a generated instance
+        Graph G; // the graph
+
+        if (src.startsWith(GENERATED)) {
+            p=src.substring(GENERATED.length()).split("[^0-9]+");
+            return generate(Integer.parseInt(p[1]),Integer.parseInt(p[2]),
+                    Integer.parseInt(p[3]),Integer.parseInt(p[4]),seed);
+        }
+        G=new Graph();
+        Main.initialise(G,src);
+        return G;
+    }
+
+    /**
+     * Produces the number of bytes the calling thread allocated so far.
+     * @return the allocated bytes, -1 if the virtual machine does not tell
+     */
+    protected static long allocation() {
+        ThreadMXBean bean; // thread information of the virtual machine
+
+        bean=ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+                                            Thread.currentThread().getId());
+    }
+
+    /**
+     * Produces the number of garbage collections so far
+     * @return the collection count of all collectors
+     */
+    protected static long collectionCount() {
+        long n; // general purpose counter
+
+        n=0;
+        for(GarbageCollectorMXBean gc :
+                            ManagementFactory.getGarbageCollectorMXBeans())
+            n+=Math.max(0,gc.getCollectionCount());
+        return n;
+    }
+
+    /**
+     * Produces the time spent collecting garbage so far
+     * @return the collection time of all collectors in milliseconds
+     */
+    protected static long collectionTime() {
+        long t; // general purpose time
+
+        t=0;
+        for(GarbageCollectorMXBean gc :
+                            ManagementFactory.getGarbageCollectorMXBeans())
+            t+=Math.max(0,gc.getCollectionTime());
+        return t;
+    }
+
+    /**
+     * Quote a string for JSON.
+     *
+     * @param s     String to quote
+     * @return      The string between quotes, with quotes, backslashes and
+     *              control characters escaped
+     */
+    protected static String quote(String s) {
+        StringBuilder out; // the quoted string
+        int i; // general purpose counter
+        char c; // general purpose character
+
+        out=new StringBuilder("\"");
+        for(i=0;i<s.length();i++) {
+            c=s.charAt(i);
+            if (c=='"' || c=='\\') out.append('\\').append(c);
+            else if (c<0x20) out.append(String.format("\\u%04x",(int)c));
+            else out.append(c);
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * Measure an engine on an instance: warm it up and then solve the
+     * instance repeatedly, collecting the statistics of every run.
+     *
+     * @param src       Name of the instance
+     * @param net       The frozen graph of the instance, unused for the graph
+     * @param engine    Engine to run, null for Graph.optimise()
+     * @param warmup    Number of runs that are not measured
+     * @param runs      Number of measured runs
+     * @return          The fastest and total time in nanoseconds, the bytes
+     *                  allocated (-1 if unknown), the number of garbage
+     *                  collections and their time in milliseconds
+     */
+    protected static long[] measure(String src, FlowNetwork net,
+                                FlowEngine engine, int warmup, int runs) {
+        long[] m; // the measurement
+        long t; // time of one run
+        int r; // run iterator
+
+        for(r=0;r<warmup;r++) solve(src,net,engine);
+
+        m=new long[] {Long.MAX_VALUE,0,0,0,0};
+        for(r=0;r<runs;r++) {
+            t=solve(src,net,engine);
+            m[0]=Math.min(m[0],t);
+            m[1]+=t;
+            m[2]=(allocated<0 || m[2]<0)?(-1):(m[2]+allocated);
+            m[3]+=collections;
+            m[4]+=collectionTime;
+        }
+        return m;
+    }
+
+    /**
+     * Solve a configuration file once with the given engine, capturing what
+     * would have been printed.
+     *
+     * @param src       Name of the configuration file
+     * @param net       The frozen graph of the file, unused for the graph
+     * @param engine    Engine to run, null for Graph.optimise()
+     * @return          Solving time in nanoseconds
+     */
+    protected static long solve(String src, FlowNetwork net,
+                                                        FlowEngine engine) {
+        ByteArrayOutputStream buffer; // captured output
+        PrintStream out; // the real System.out
+        Graph G; // graph to solve when no engine is given
+        long start,stop; // solving start and end time
+        long bytes,count,time; // allocation and collections before solving
+
+        G=null;
+        if (engine==null)
+            G=load(src); // a Graph can only be solved once
+
+        buffer=new ByteArrayOutputStream();
+        out=System.out;
+        System.setOut(new PrintStream(buffer));
+        try {
+            count=collectionCount();
+            time=collectionTime();
+            bytes=allocation();
+            start=System.nanoTime();
+            if (engine==null) G.optimise();
+            else net.optimise(engine);
+            stop=System.nanoTime();
+            allocated=(bytes<0)?(-1):(allocation()-bytes);
+            collections=collectionCount()-count;
+            collectionTime=collectionTime()-time;
+        } finally {
+            System.setOut(out);
+        }
+
+        output=buffer.toString();
+        return stop-start;
+    }
+
+    /**
+     * Entry point of the benchmark.
+     *
+     * @param args the command line arguments: any number of "-engine name",
+     *              optionally "-runs count", "-warmup count", "-threads
+     *              count", "-json name", the instance parameters "-nodes",
+     *              "-density", "-range", "-depth" and "-seed", followed by
+     *              configuration files
+     */
+    public static void main(String[] args) {
+        ArrayList<String> engines; // names of the engines to compare
+        ArrayList<String> files; // configuration files to solve
+        String[][] grid; // parameter lists of generated instances
+        String[] names; // names of the parameters
+        StringBuilder json; // results for the JSON file
+        String report; // name of the JSON file, null for none
+        PrintWriter writer; // writes the JSON file
+        FlowNetwork net; // frozen graph of the current file
+        FlowEngine engine; // engine being measured
+        String reference; // output of Graph.optimise()
+        long[][] m; // measurement of every engine
+        boolean[] same; // whether every engine gave the graph's output
+        long base; // fastest run time of the baseline engine
+        double avg; // average run time in nanoseconds
+        int runs,warmup,threads,i,j; // run counts, threads and iterators
+
+        engines=new ArrayList<String>();
+        files=new ArrayList<String>();
+        names=new String[] {"nodes","density","range","depth"};
+        grid=new String[names.length][];
+        report=null;
+        runs=3;
+        warmup=1;
+        threads=Runtime.getRuntime().availableProcessors();
+        try {
+            for(i=0;i<args.length;i++) {
+                if (args[i].equals("-engine") && i+1<args.length) {
+                    Main.selectEngine(args[++i]); // validate the name
+                    engines.add(args[i]);
+                } else if (args[i].equals("-runs") && i+1<args.length) {
+                    runs=Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-warmup") && i+1<args.length) {
+                    warmup=Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-threads") && i+1<args.length) {
+                    threads=Integer.parseInt(args[++i]);
+                    Main.selectEngine("parallel",threads); // validate it
+                } else if (args[i].equals("-json") && i+1<args.length) {
+                    report=args[++i];
+                } else if (args[i].equals("-seed") && i+1<args.length) {
+                    seed=Long.parseLong(args[++i]);
+                } else if (args[i].startsWith("-") && i+1<args.length &&
+                        Arrays.asList(names).contains(args[i].substring(1))) {
+                    j=Arrays.asList(names).indexOf(args[i].substring(1));
+                    grid[j]=args[++i].split(",");
+                    for(String p : grid[j]) {
+                        if (Integer.parseInt(p)<((j==1 || j==2)?(0):(1)))
+                            throw new IllegalArgumentException(
+                                    "Attempted to generate with "+
+                                    args[i-1]+" "+p);
+                    }
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (runs<1 || warmup<0)
+                throw new IllegalArgumentException(
+                        "Attempted to measure less than one run.");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid command line:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+        if (engines.isEmpty())
+            engines.addAll(Arrays.asList(Main.ENGINES.split(" ")));
+
+        // Every combination of the parameters gives a generated instance
+        if (grid[0]!=null || grid[1]!=null || grid[2]!=null || grid[3]!=null) {
+            if (grid[0]==null) grid[0]=new String[] {"1000"};
+            if (grid[1]==null) grid[1]=new String[] {"2"};
+            if (grid[2]==null) grid[2]=new String[] {"100"};
+            if (grid[3]==null) grid[3]=new String[] {"1"};
+            for(String n : grid[0])
+                for(String d : grid[1])
+                    for(String r : grid[2])
+                        for(String c : grid[3]) {
+                            if (Integer.parseInt(c)>Integer.parseInt(n))
+                                continue; // more layers than technologies
+                            files.add(GENERATED+"nodes="+n+",density="+d+
+                                                ",range="+r+",depth="+c);
+                        }
+        }
+
+        json=new StringBuilder();
+        System.out.println("file engine best_ms same_as_graph speedup "+
+                        "avg_ms ops_per_s alloc_bytes_per_op gc_count gc_ms");
+        for(String src : files) {
+            net=load(src).freeze();
+
+            solve(src,null,null);
+            reference=output;
+
+            m=new long[engines.size()][];
+            same=new boolean[engines.size()];
+            for(i=0;i<engines.size();i++) {
+                engine=Main.selectEngine(engines.get(i),threads);
+                m[i]=measure(src,net,engine,warmup,runs);
+                same[i]=output.equals(reference);
+            }
+
+            // Measure the baseline last, when the JIT has warmed up
+            base=measure(src,net,Main.selectEngine(BASELINE),warmup,runs)[0];
+            for(i=0;i<engines.size();i++) {
+                if (engines.get(i).equals(BASELINE))
+                    base=Math.min(base,m[i][0]);
+            }
+
+            for(i=0;i<engines.size();i++) {
+                avg=(double)m[i][1]/runs;
+                System.out.println(src+" "+engines.get(i)+" "+
+                        String.format("%.3f",m[i][0]/1e6)+" "+
+                        (same[i]?"yes":"NO")+" "+
+                        String.format("%.2f",(double)base/m[i][0])+" "+
+                        String.format("%.3f",avg/1e6)+" "+
+                        String.format("%.1f",1e9/avg)+" "+
+                        ((m[i][2]<0)?(-1):(m[i][2]/runs))+" "+
+                        m[i][3]+" "+m[i][4]);
+
+                if (json.length()>0) json.append(",\n");
+                json.append("  {\"instance\":").append(quote(src));
+                json.append(",\"engine\":").append(quote(engines.get(i)));
+                json.append(",\"runs\":").append(runs);
+                json.append(",\"best_ms\":").append(m[i][0]/1e6);
+                json.append(",\"avg_ms\":").append(avg/1e6);
+                json.append(",\"ops_per_s\":").append(1e9/avg);
+                json.append(",\"alloc_bytes_per_op\":").append(
+                                    (m[i][2]<0)?(-1):(m[i][2]/runs));
+                json.append(",\"gc_count\":").append(m[i][3]);
+                json.append(",\"gc_ms\":").append(m[i][4]);
+                json.append(",\"same_as_graph\":").append(same[i]);
+                json.append(",\"speedup\":").append((double)base/m[i][0]);
+                json.append('}');
+            }
+        }
+
+        if (report!=null) {
+            try {
+                writer=new PrintWriter(new FileWriter(report));
+                writer.println("{\"java\":"+
+                        quote(System.getProperty("java.version"))+
+                        ",\"processors\":"+
+                        Runtime.getRuntime().availableProcessors()+
+                        ",\"threads\":"+threads+",\"warmup\":"+warmup+
+                        ",\"seed\":"+seed+",\"results\":[");
+                writer.println(json);
+                writer.println("]}");
+                writer.close();
+                if (writer.checkError())
+                    throw new IOException("Write error");
+            } catch (IOException e) {
+                System.err.println("Report '"+report+"' could not be written:");
+                System.err.println(e.toString());
+                System.exit(1);
+            }
+        }
+
+        System.exit(0);
+    }
+}
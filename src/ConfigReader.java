@@ -0,0 +1,751 @@
+// File: ConfigReader.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * Reads a configuration file (see Main for the format) into a Graph by
+ * scanning its bytes directly instead of going through a Scanner. A plain
+ * file is memory-mapped in windows of at most WINDOW bytes, so files larger
+ * than 2 GB can be read as well. Gzip compressed files, recognised by their
+ * magic number, and the standard input (file name "-") are read through a
+ * buffer instead.
+ * <P>
+ * Technology names are interned into dense numbers by a hash table over
+ * their bytes. A String is only made once for every technology, when it is
+ * defined; the names in the dependency lines are looked up without making
+ * any. Errors are reported with the same exceptions a Scanner and the Graph
+ * would throw, so that Main can report them in the same categories:
+ * InputMismatchException for malformed input, IllegalArgumentException for
+ * an inconsistent one, NoSuchElementException when it ends prematurely and
+ * NullPointerException for a dependency on an undefined technology.
+ * <P>
+ * When more than one thread is allowed, the dependencies of a mapped file
+ * are read in parallel: once all technologies are interned the hash table
+ * no longer changes, so the rest of the file is cut into ranges at line
+ * ends and every range is scanned by a thread into its own array of edges.
+ * The arrays are then added to the graph in the order of the ranges, which
+ * gives exactly the graph a sequential read gives. Should a range hold
+ * anything unexpected, like an error or a dependency spread over two lines,
+ * the dependencies are read again sequentially so that the same exception
+ * as before is thrown.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ConfigReader {
+    /**
+     * The largest part of a file mapped into memory at once.
+     */
+    protected static final int WINDOW=1<<30;
+    /**
+     * The initial size of the buffer used for streams.
+     */
+    protected static final int CHUNK=1<<16;
+    /**
+     * Dependencies are only read in parallel when there are at least this
+     * many.
+     */
+    protected static final int PARALLEL_MINIMUM=1<<14;
+    /**
+     * Number of ranges the dependencies are cut into for every thread, so
+     * that a thread finishing early can take over some of the work.
+     */
+    protected static final int RANGES_PER_THREAD=4;
+    /**
+     * The graph being filled.
+     */
+    protected Graph graph;
+    /**
+     * The mapped file, null when reading a stream.
+     */
+    protected FileChannel channel;
+    /**
+     * The stream being read, null when reading a mapped file.
+     */
+    protected InputStream in;
+    /**
+     * The bytes read so far and not yet scanned, either a window of the
+     * mapped file or the buffer of the stream.
+     */
+    protected ByteBuffer buf;
+    /**
+     * The backing array of buf when reading a stream.
+     */
+    protected byte[] chunk;
+    /**
+     * Position in the file of the first byte of buf.
+     */
+    protected long offset;
+    /**
+     * Position in buf of the next byte to scan.
+     */
+    protected int pos;
+    /**
+     * Position in buf of the first byte after the data.
+     */
+    protected int end;
+    /**
+     * Position in buf of the token being scanned, which must survive a
+     * refill.
+     */
+    protected int mark;
+    /**
+     * Set once the last byte of the input is in buf.
+     */
+    protected boolean eof;
+    /**
+     * The characters set used for technology names.
+     */
+    protected Charset charset;
+    /**
+     * Open addressing hash table holding the number of every technology
+     * plus one, 0 for an empty slot.
+     */
+    protected int[] table;
+    /**
+     * The bytes of all technology names.
+     */
+    protected byte[] pool;
+    /**
+     * Number of bytes used in pool.
+     */
+    protected int poolSize;
+    /**
+     * Start of the name of every technology in pool.
+     */
+    protected int[] nameStart;
+    /**
+     * The node of every technology.
+     */
+    protected Node[] nodes;
+    /**
+     * Number of technologies interned.
+     */
+    protected int count;
+    /**
+     * Length of the name scanned last, whose bytes follow the interned
+     * names in pool.
+     */
+    protected int length;
+    /**
+     * Number of threads reading the dependencies.
+     */
+    protected int threads;
+
+    /**
+     * Constructor for a ConfigReader reading on the calling thread only.
+     *
+     * @param G     Graph to add the technologies and dependencies to
+     */
+    public ConfigReader(Graph G) {
+        this(G,1);
+    }
+
+    /**
+     * Constructor for the ConfigReader class.
+     *
+     * @param G     Graph to add the technologies and dependencies to
+     * @param t     Number of threads reading the dependencies of a mapped
+     *              file
+     * @throws IllegalArgumentException Thrown when t is less than 1.
+     */
+    public ConfigReader(Graph G, int t) throws IllegalArgumentException {
+        if (t<1)
+            throw new IllegalArgumentException(
+                    "Attempted to use less than one thread.");
+        threads=t;
+        graph=G;
+        charset=Charset.defaultCharset();
+        table=new int[1024];
+        pool=new byte[CHUNK];
+        nameStart=new int[256];
+        nodes=new Node[256];
+    }
+
+    /**
+     * Read a configuration file into the graph.
+     *
+     * @param src   Name of the file, "-" for the standard input
+     * @throws IOException              Thrown when the file can not be read.
+     * @throws InputMismatchException   Thrown when a count, cost or profit
+     *                                  is not an integer or a separator is
+     *                                  not "->".
+     * @throws NoSuchElementException   Thrown when the file ends too soon.
+     * @throws IllegalArgumentException Thrown when a technology is defined
+     *                                  twice.
+     * @throws NullPointerException     Thrown when a dependency names an
+     *                                  undefined technology.
+     */
+    public void read(String src) throws IOException {
+        RandomAccessFile file; // the file to map
+        InputStream s; // the stream to read
+        byte[] magic; // first bytes of the file
+
+        file=null;
+        pos=0;
+        mark=0;
+        offset=0;
+        eof=false;
+        try {
+            if (src.equals("-")) {
+                s=new BufferedInputStream(System.in,CHUNK);
+            } else {
+                file=new RandomAccessFile(src,"r");
+                magic=new byte[2];
+                if (file.length()<2 || file.read(magic)<2 || (magic[0]!=31 ||
+                                                        magic[1]!=(byte)139)) {
+                    channel=file.getChannel();
+                    map(0);
+                    parse();
+                    return;
+                }
+                s=new BufferedInputStream(new FileInputStream(src),CHUNK);
+                file.close();
+                file=null;
+            }
+
+            s.mark(2);
+            magic=new byte[2];
+            if (s.read(magic)==2 && magic[0]==31 && magic[1]==(byte)139) {
+                s.reset();
+                s=new GZIPInputStream(s,CHUNK);
+            } else {
+                s.reset();
+            }
+            in=s;
+            chunk=new byte[CHUNK];
+            buf=ByteBuffer.wrap(chunk);
+            end=0;
+            parse();
+        } finally {
+            if (file!=null) file.close();
+            if (in!=null && !src.equals("-")) in.close();
+            channel=null;
+            in=null;
+        }
+    }
+
+    /**
+     * Map the window of the file starting at the given position.
+     *
+     * @param start     Position in the file of the first byte to map
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected void map(long start) throws IOException {
+        long size; // bytes from start to the end of the file
+
+        size=channel.size()-start;
+        buf=channel.map(FileChannel.MapMode.READ_ONLY,start,
+                                                    Math.min(size,WINDOW));
+        offset=start;
+        end=buf.limit();
+        eof=(size<=WINDOW);
+    }
+
+    /**
+     * Get more input, keeping everything from mark on. The positions pos,
+     * mark and end are moved along with the data.
+     *
+     * @return  true if more bytes are available, false at the end
+     * @throws IOException Thrown when the input can not be read.
+     */
+    protected boolean refill() throws IOException {
+        byte[] larger; // grown stream buffer
+        int n,kept; // bytes read and kept
+
+        if (eof) return false;
+        kept=end-mark;
+        if (channel!=null) {
+            map(offset+mark);
+        } else {
+            if (kept==chunk.length) { // a single token fills the buffer
+                larger=new byte[2*chunk.length];
+                System.arraycopy(chunk,mark,larger,0,kept);
+                chunk=larger;
+                buf=ByteBuffer.wrap(chunk);
+            } else {
+                System.arraycopy(chunk,mark,chunk,0,kept);
+            }
+            n=in.read(chunk,kept,chunk.length-kept);
+            if (n<0) {
+                eof=true;
+                n=0;
+            }
+            offset+=mark;
+            end=kept+n;
+        }
+        pos-=mark;
+        mark=0;
+        return pos<end || refill();
+    }
+
+    /**
+     * Tell whether a byte separates tokens, like the default delimiter of
+     * a Scanner does for the ASCII characters.
+     *
+     * @param b     Byte to test
+     * @return      true for white space
+     */
+    protected static boolean isSpace(byte b) {
+        return b==' ' || (b>=9 && b<=13) || (b>=28 && b<=31);
+    }
+
+    /**
+     * Move pos to the start of the next token and set mark there.
+     *
+     * @throws IOException              Thrown when the input can not be read.
+     * @throws NoSuchElementException   Thrown when no token is left.
+     */
+    protected void nextToken() throws IOException {
+        while(true) {
+            mark=pos;
+            if (pos==end && !refill())
+                throw new NoSuchElementException();
+            if (!isSpace(buf.get(pos))) break;
+            pos++;
+        }
+        mark=pos;
+    }
+
+    /**
+     * Move pos to the end of the token started by nextToken().
+     *
+     * @throws IOException Thrown when the input can not be read.
+     */
+    protected void skipToken() throws IOException {
+        while((pos<end || refill()) && !isSpace(buf.get(pos))) pos++;
+    }
+
+    /**
+     * Produces the current token as a String, for error messages only.
+     * @return the token from mark to pos
+     */
+    protected String token() {
+        byte[] b; // bytes of the token
+        int i; // general purpose counter
+
+        b=new byte[pos-mark];
+        for(i=0;i<b.length;i++) b[i]=buf.get(mark+i);
+        return new String(b,charset);
+    }
+
+    /**
+     * Scan the next token as an integer.
+     *
+     * @return  The value of the token
+     * @throws IOException              Thrown when the input can not be read.
+     * @throws InputMismatchException   Thrown when the token is not an
+     *                                  integer in the range of an int.
+     * @throws NoSuchElementException   Thrown when no token is left.
+     */
+    protected int nextInt() throws IOException {
+        boolean negative; // a minus sign was read
+        boolean valid; // the token is a number so far
+        long value; // value of the digits read
+        byte b; // general purpose byte
+
+        nextToken();
+        negative=false;
+        valid=false;
+        value=0;
+        b=buf.get(pos);
+        if (b=='-' || b=='+') {
+            negative=(b=='-');
+            pos++;
+        }
+        while(pos<end || refill()) {
+            b=buf.get(pos);
+            if (b<'0' || b>'9') break;
+            value=value*10+(b-'0');
+            if (value>Integer.MAX_VALUE+1L) value=Integer.MAX_VALUE+2L;
+            valid=true;
+            pos++;
+        }
+        if (negative) value=-value;
+        if ((pos<end || refill()) && !isSpace(buf.get(pos))) valid=false;
+        if (!valid) throw new InputMismatchException();
+        if (value<Integer.MIN_VALUE || value>Integer.MAX_VALUE)
+            throw new InputMismatchException(
+                    "For input string: \""+token()+"\"");
+
+        return (int)value;
+    }
+
+    /**
+     * Scan the next token as a name, copying its bytes into pool right
+     * after the names interned so far, and compute its hash.
+     *
+     * @return  The hash of the name
+     * @throws IOException              Thrown when the input can not be read.
+     * @throws NoSuchElementException   Thrown when no token is left.
+     */
+    protected int nextName() throws IOException {
+        int h; // FNV-1a hash of the bytes
+        byte b; // general purpose byte
+
+        nextToken();
+        h=0x811c9dc5;
+        length=0;
+        while((pos<end || refill()) && !isSpace(b=buf.get(pos))) {
+            if (poolSize+length==pool.length)
+                pool=Arrays.copyOf(pool,2*pool.length);
+            pool[poolSize+length++]=b;
+            h=(h^(b&0xff))*0x01000193;
+            pos++;
+        }
+        return h;
+    }
+
+    /**
+     * Turn a hash into a first slot of the hash table. The bits of the hash
+     * are mixed first, because names that only differ in their last
+     * characters would otherwise crowd into neighbouring slots.
+     *
+     * @param h     Hash of a name
+     * @param size  Size of the hash table, a power of two
+     * @return      Position in the hash table
+     */
+    protected static int spread(int h, int size) {
+        h^=h>>>16;
+        h*=0x85ebca6b;
+        h^=h>>>13;
+        return h&(size-1);
+    }
+
+    /**
+     * Find the slot of the hash table holding the name scanned last, or the
+     * empty slot where it belongs.
+     *
+     * @param h     Hash of the name
+     * @return      Position in the hash table
+     */
+    protected int slot(int h) {
+        int i,id,k; // slot, technology and counter
+
+        for(i=spread(h,table.length);table[i]!=0;i=(i+1)&(table.length-1)) {
+            id=table[i]-1;
+            if (nameStart[id+1]-nameStart[id]!=length) continue;
+            for(k=0;k<length;k++) {
+                if (pool[nameStart[id]+k]!=pool[poolSize+k]) break;
+            }
+            if (k==length) return i;
+        }
+        return i;
+    }
+
+    /**
+     * Make room for one more technology, doubling the hash table when it
+     * becomes half full.
+     */
+    protected void grow() {
+        int[] old; // previous hash table
+        int i,j,k,h; // general purpose counters and hash
+
+        if (count==nodes.length) nodes=Arrays.copyOf(nodes,2*count);
+        if (count+1==nameStart.length)
+            nameStart=Arrays.copyOf(nameStart,2*nameStart.length);
+        if (2*(count+1)<table.length) return;
+
+        old=table;
+        table=new int[2*old.length];
+        for(i=0;i<old.length;i++) {
+            if (old[i]==0) continue;
+            h=0x811c9dc5;
+            for(k=nameStart[old[i]-1];k<nameStart[old[i]];k++)
+                h=(h^(pool[k]&0xff))*0x01000193;
+            for(j=spread(h,table.length);table[j]!=0;j=(j+1)&(table.length-1));
+            table[j]=old[i];
+        }
+    }
+
+    /**
+     * Define a technology with the name scanned by nextName() and intern
+     * the name.
+     *
+     * @param h         Hash of the name
+     * @param profit    Profit of the technology
+     * @param cost      Cost of the technology
+     * @throws IllegalArgumentException Thrown when the technology is already
+     *                                  defined.
+     */
+    protected void define(int h, int profit, int cost)
+                                            throws IllegalArgumentException {
+        String name; // the name as a String
+
+        name=new String(pool,poolSize,length,charset);
+        graph.addTechnology(name,profit,cost); // rejects a redefinition
+
+        grow();
+        nodes[count]=graph.names.get(name);
+        table[slot(h)]=count+1;
+        poolSize+=length;
+        nameStart[++count]=poolSize;
+    }
+
+    /**
+     * Produces the node of the technology named by the name scanned last.
+     * @param h the hash of the name
+     * @return the node of the technology, null if it is undefined
+     */
+    protected Node lookup(int h) {
+        int i; // slot of the name
+
+        i=slot(h);
+        return (table[i]==0)?(null):(nodes[table[i]-1]);
+    }
+
+    /**
+     * Produces the node of the technology named by bytes of a mapped range.
+     * Only the hash table is read, so several threads may call it at once.
+     *
+     * @param b         Buffer holding the name
+     * @param start     Position in b of the first byte of the name
+     * @param len       Length of the name
+     * @param h         Hash of the name
+     * @return          The node of the technology, null if it is undefined
+     */
+    protected Node find(ByteBuffer b, int start, int len, int h) {
+        int i,id,k; // slot, technology and counter
+
+        for(i=spread(h,table.length);table[i]!=0;i=(i+1)&(table.length-1)) {
+            id=table[i]-1;
+            if (nameStart[id+1]-nameStart[id]!=len) continue;
+            for(k=0;k<len;k++) {
+                if (pool[nameStart[id]+k]!=b.get(start+k)) break;
+            }
+            if (k==len) return nodes[id];
+        }
+        return null;
+    }
+
+    /**
+     * Find the first position after a line end at or after the given one.
+     *
+     * @param p     Position in the file
+     * @return      Position in the file of the start of the next line, or
+     *              the file size when there is none
+     * @throws IOException Thrown when the file can not be read.
+     */
+    protected long lineStart(long p) throws IOException {
+        ByteBuffer b; // bytes read from the file
+        long size; // size of the file
+        int i; // general purpose counter
+
+        size=channel.size();
+        b=ByteBuffer.allocate(256);
+        while(p<size) {
+            b.clear();
+            if (channel.read(b,p)<=0) break;
+            for(i=0;i<b.position();i++) {
+                if (b.get(i)=='\n') return p+i+1;
+            }
+            p+=b.position();
+        }
+        return size;
+    }
+
+    /**
+     * Read the given number of dependencies from the rest of the mapped file
+     * on several threads. Nothing is added to the graph unless all of them
+     * are read without surprises.
+     *
+     * @param depCount  Number of dependencies to read
+     * @return          true when the dependencies were added, false when
+     *                  they have to be read sequentially instead
+     * @throws IOException Thrown when the file can not be read.
+     */
+    protected boolean parseParallel(int depCount) throws IOException {
+        ArrayList<Range> ranges; // the ranges in file order
+        ExecutorService service; // the threads scanning the ranges
+        long start,size,from,to; // positions in the file
+        int parts,needed,taken,i,j; // range count and edge counters
+
+        start=offset+pos;
+        size=channel.size();
+        parts=(int)Math.max(threads*RANGES_PER_THREAD,(size-start)/WINDOW+1);
+        ranges=new ArrayList<Range>();
+        from=start;
+        for(i=1;i<=parts && from<size;i++) {
+            to=(i==parts)?(size):(lineStart(start+(size-start)*i/parts));
+            if (to<=from) continue;
+            if (to-from>WINDOW) return false; // a single enormous line
+            ranges.add(new Range(channel.map(FileChannel.MapMode.READ_ONLY,
+                                                        from,to-from)));
+            from=to;
+        }
+
+        service=Executors.newFixedThreadPool(threads);
+        try {
+            for(Future<Range> r : service.invokeAll(ranges)) r.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } catch (ExecutionException e) {
+            return false; // let the sequential read report it
+        } finally {
+            service.shutdown();
+        }
+
+        // Only the first depCount dependencies count, like sequentially
+        needed=depCount;
+        for(Range r : ranges) {
+            needed-=Math.min(r.count,needed);
+            if (needed==0) break;
+            if (!r.complete) return false;
+        }
+        if (needed>0) return false; // the file ends prematurely
+
+        needed=depCount;
+        for(Range r : ranges) {
+            taken=Math.min(r.count,needed);
+            for(j=0;j<taken;j++) graph.addEdge(r.edges[j]);
+            needed-=taken;
+        }
+        return true;
+    }
+
+    /**
+     * Read the counts, the technologies and the dependencies.
+     *
+     * @throws IOException Thrown when the input can not be read.
+     */
+    protected void parse() throws IOException {
+        int techCount,depCount,cost,profit,h,n,i; // values read and counters
+        boolean separator; // the separator was "->"
+        Node f,t; // technologies of a dependency
+
+        techCount=nextInt();
+        depCount=nextInt();
+
+        for(i=0;i<techCount;i++) {
+            h=nextName();
+            n=length; // the numbers do not touch the pool
+            cost=nextInt();
+            profit=nextInt();
+            length=n;
+            define(h,profit,cost);
+        }
+
+        if (channel!=null && threads>1 && depCount>=PARALLEL_MINIMUM &&
+                                                    parseParallel(depCount))
+            return;
+
+        for(i=0;i<depCount;i++) {
+            f=lookup(nextName());
+            nextToken();
+            skipToken();
+            separator=(pos-mark==2 && buf.get(mark)=='-' &&
+                                                    buf.get(mark+1)=='>');
+            t=lookup(nextName());
+            if (!separator) // check specifications!
+                throw new InputMismatchException(
+                        "Expected a separtor of form '->' not foud");
+            if (t==null || f==null)
+                throw new NullPointerException(
+                        "Attempted to connect undefined technologies.");
+            graph.addDependency(f,t);
+        }
+    }
+
+    /**
+     * A line aligned range of the dependencies, scanned by one thread into
+     * an array of edges.
+     */
+    protected class Range implements Callable<Range> {
+        /**
+         * The mapped bytes of the range.
+         */
+        protected ByteBuffer data;
+        /**
+         * The edges of the dependencies read.
+         */
+        protected Edge[] edges;
+        /**
+         * Number of dependencies read.
+         */
+        protected int count;
+        /**
+         * Set when the whole range consisted of valid dependencies.
+         */
+        protected boolean complete;
+
+        /**
+         * Constructor for the Range class.
+         *
+         * @param b     Mapped bytes of the range
+         */
+        protected Range(ByteBuffer b) {
+            data=b;
+            edges=new Edge[Math.max(16,Math.min(b.limit()/16,1<<16))];
+        }
+
+        /**
+         * Skip white space.
+         *
+         * @param p     Position in data
+         * @return      Position of the next token, or the limit of data
+         */
+        protected int skip(int p) {
+            while(p<data.limit() && isSpace(data.get(p))) p++;
+            return p;
+        }
+
+        /**
+         * Look up the technology named by the token at a position.
+         *
+         * @param p     Position of the first byte of the token
+         * @param q     Position after the last byte of the token
+         * @return      The node of the technology, null if it is undefined
+         */
+        protected Node name(int p, int q) {
+            int h,i; // FNV-1a hash of the bytes and counter
+
+            h=0x811c9dc5;
+            for(i=p;i<q;i++) h=(h^(data.get(i)&0xff))*0x01000193;
+            return find(data,p,q-p,h);
+        }
+
+        /**
+         * Scan the dependencies of the range until its end or until
+         * something other than a valid dependency is found.
+         *
+         * @return  This range
+         */
+        public Range call() {
+            int p,q,n; // positions in data and its limit
+            Node f,t; // technologies of a dependency
+
+            n=data.limit();
+            p=skip(0);
+            while(p<n) {
+                for(q=p;q<n && !isSpace(data.get(q));q++);
+                f=name(p,q);
+                p=skip(q);
+                for(q=p;q<n && !isSpace(data.get(q));q++);
+                if (q-p!=2 || data.get(p)!='-' || data.get(p+1)!='>')
+                    return this;
+                p=skip(q);
+                for(q=p;q<n && !isSpace(data.get(q));q++);
+                t=name(p,q);
+                if (p==n || f==null || t==null) return this;
+
+                if (count==edges.length)
+                    edges=Arrays.copyOf(edges,2*count);
+                edges[count++]=new Edge(f,t,Integer.MAX_VALUE);
+                p=skip(q);
+            }
+            complete=true;
+            return this;
+        }
+    }
+}
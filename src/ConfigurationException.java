@@ -0,0 +1,35 @@
+// File: ConfigurationException.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+/**
+ * Thrown by the Optimiser when a configuration file or snapshot can not be
+ * turned into a network. The message tells what went wrong in the same
+ * words Main reports it with, the cause is the exception that was thrown
+ * while reading: an InputMismatchException for malformed input, an
+ * IllegalArgumentException for an inconsistent one, a
+ * NoSuchElementException when it ends prematurely, a NullPointerException
+ * for a dependency on an undefined technology and an IOException when the
+ * file can not be read at all.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ConfigurationException extends Exception {
+    /**
+     * Version of the serialised form.
+     */
+    private static final long serialVersionUID=1L;
+
+    /**
+     * Constructor for the ConfigurationException class.
+     *
+     * @param message   Description of the problem
+     * @param cause     Exception thrown while reading
+     */
+    public ConfigurationException(String message, Throwable cause) {
+        super(message,cause);
+    }
+}
@@ -0,0 +1,454 @@
+// File: Dimacs.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Reads and writes maximum flow problems in the DIMACS "p max" format, so
+ * that the engines can be compared on the published benchmark families and
+ * with other solvers. Such a file consists of lines
+ * <PRE>
+ * c comment
+ * p max nodes arcs
+ * n id s
+ * n id t
+ * a from to capacity
+ * </PRE>
+ * with the nodes numbered from 1. Unlike a configuration file any node can
+ * be the source or the sink and an arc can join any two nodes with any
+ * capacity. A file read is turned into a FlowNetwork, or into a Graph whose
+ * source and sink are the nodes marked s and t and whose other nodes are
+ * named after their number.
+ * <P>
+ * Run on its own it is a driver solving a file with any engine:
+ * <PRE>
+ * java Dimacs [-engine name] [-threads count] [-runs count] [-write out] file
+ * </PRE>
+ * which prints the flow value and the time taken by every run. The file can
+ * also be a configuration file or a Snapshot; with "-write out" it is
+ * written to out in DIMACS format instead of being solved.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Dimacs {
+    /**
+     * Number of nodes.
+     */
+    protected int nodes;
+    /**
+     * Number of arcs.
+     */
+    protected int arcs;
+    /**
+     * The source, numbered from 0.
+     */
+    protected int source;
+    /**
+     * The sink, numbered from 0.
+     */
+    protected int sink;
+    /**
+     * Tail of every arc, numbered from 0.
+     */
+    protected int[] from;
+    /**
+     * Head of every arc, numbered from 0.
+     */
+    protected int[] to;
+    /**
+     * Capacity of every arc.
+     */
+    protected long[] capacity;
+
+    /**
+     * Constructor for the Dimacs class. Reads a problem from a file.
+     *
+     * @param src   Name of the file
+     * @throws IOException              Thrown when the file can not be read.
+     * @throws IllegalArgumentException Thrown when the file is not a valid
+     *                                  DIMACS maximum flow problem, with the
+     *                                  line at fault.
+     */
+    public Dimacs(String src) throws IOException, IllegalArgumentException {
+        BufferedReader in; // the file
+        StringTokenizer word; // the words of a line
+        String line,kind; // a line and its first word
+        long profit; // capacity leaving the source
+        int number,u,v,m; // line number, nodes and arcs read
+
+        source=-1;
+        sink=-1;
+        nodes=-1;
+        m=0;
+        in=new BufferedReader(new FileReader(src),1<<16);
+        try {
+            for(number=1;(line=in.readLine())!=null;number++) {
+                word=new StringTokenizer(line);
+                if (!word.hasMoreTokens()) continue;
+                kind=word.nextToken();
+                if (kind.equals("c")) continue;
+                try {
+                    if (kind.equals("p") && nodes<0) {
+                        if (!word.nextToken().equals("max"))
+                            throw new IllegalArgumentException(
+                                    "not a maximum flow problem");
+                        nodes=Integer.parseInt(word.nextToken());
+                        arcs=Integer.parseInt(word.nextToken());
+                        if (nodes<2 || arcs<0)
+                            throw new IllegalArgumentException(
+                                    "invalid problem size");
+                        from=new int[arcs];
+                        to=new int[arcs];
+                        capacity=new long[arcs];
+                    } else if (kind.equals("n") && nodes>=0) {
+                        u=node(word.nextToken());
+                        kind=word.nextToken();
+                        if (kind.equals("s") && source<0)
+                            source=u;
+                        else if (kind.equals("t") && sink<0)
+                            sink=u;
+                        else
+                            throw new IllegalArgumentException(
+                                    "unexpected node designation");
+                    } else if (kind.equals("a") && nodes>=0 && m<arcs) {
+                        u=node(word.nextToken());
+                        v=node(word.nextToken());
+                        from[m]=u;
+                        to[m]=v;
+                        capacity[m]=Long.parseLong(word.nextToken());
+                        if (capacity[m]<0 ||
+                                        capacity[m]>=FlowNetwork.INFINITE)
+                            throw new IllegalArgumentException(
+                                    "invalid capacity");
+                        m++;
+                    } else {
+                        throw new IllegalArgumentException(
+                                "unexpected line");
+                    }
+                    if (word.hasMoreTokens())
+                        throw new IllegalArgumentException(
+                                "unexpected text at the end");
+                } catch (NoSuchElementException e) {
+                    throw new IllegalArgumentException("Line "+number+
+                                                    ": the line is too short");
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Line "+number+
+                                                    ": "+e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line "+number+
+                                                    ": "+e.getMessage());
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (nodes<0)
+            throw new IllegalArgumentException("The problem line is missing");
+        if (source<0 || sink<0 || source==sink)
+            throw new IllegalArgumentException(
+                    "The source and the sink must be two different nodes");
+        if (m<arcs)
+            throw new IllegalArgumentException("Only "+m+" of the "+arcs+
+                                                    " arcs are given");
+
+        // The flow must stay far below the capacity meaning infinite
+        profit=0;
+        for(m=0;m<arcs;m++) {
+            if (from[m]!=source) continue;
+            profit+=capacity[m];
+            if (profit>=FlowNetwork.INFINITE)
+                throw new IllegalArgumentException(
+                        "The capacity leaving the source is too large");
+        }
+    }
+
+    /**
+     * Translate the number of a node in the file.
+     *
+     * @param id    Number as written in the file, counting from 1
+     * @return      Number of the node counting from 0
+     * @throws IllegalArgumentException Thrown when there is no such node.
+     */
+    protected int node(String id) throws IllegalArgumentException {
+        int u; // the node
+
+        u=Integer.parseInt(id);
+        if (u<1 || u>nodes)
+            throw new IllegalArgumentException("node "+id+" does not exist");
+        return u-1;
+    }
+
+    /**
+     * Tell whether a file looks like a DIMACS problem rather than a
+     * configuration file or snapshot: its first word is "c" or "p".
+     *
+     * @param src   Name of the file
+     * @return      true if the file starts like a DIMACS problem
+     */
+    public static boolean isDimacs(String src) {
+        BufferedReader in; // the start of the file
+        String line; // first line with a word on it
+        boolean found; // a DIMACS line was found
+
+        try {
+            in=new BufferedReader(new FileReader(src));
+            try {
+                while((line=in.readLine())!=null &&
+                                        line.trim().length()==0);
+                found=(line!=null && (line.trim().startsWith("c") ||
+                                        line.trim().startsWith("p")));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            found=false;
+        }
+        return found;
+    }
+
+    /**
+     * Produces the problem as a FlowNetwork, nodes named after their number.
+     * @return a new network with the zero flow
+     */
+    public FlowNetwork network() {
+        String[] label; // names of the nodes
+        int u; // general purpose node
+
+        label=new String[nodes];
+        for(u=0;u<nodes;u++) label[u]=Integer.toString(u+1);
+        return new FlowNetwork(label,source,sink,arcs,from,to,capacity);
+    }
+
+    /**
+     * Produces the problem as a Graph. The source and the sink become those
+     * of the graph, all other nodes are added as technologies without
+     * profit or cost named after their number, and every arc becomes an
+     * edge.
+     *
+     * @return a new graph with the zero flow
+     * @throws IllegalArgumentException Thrown when a capacity does not fit
+     *                                  the edges of a Graph, which use
+     *                                  Integer.MAX_VALUE for infinite.
+     */
+    public Graph graph() throws IllegalArgumentException {
+        Node[] node; // node of the graph by number
+        Graph G; // the graph
+        int u; // general purpose node or arc
+
+        for(u=0;u<arcs;u++) {
+            if (capacity[u]>=Integer.MAX_VALUE)
+                throw new IllegalArgumentException(
+                        "Capacity "+capacity[u]+" is too large for a Graph");
+        }
+
+        G=new Graph();
+        node=new Node[nodes];
+        for(u=0;u<nodes;u++) {
+            if (u==source) {
+                node[u]=G.source;
+            } else if (u==sink) {
+                node[u]=G.sink;
+            } else {
+                G.addTechnology(Integer.toString(u+1),0,0);
+                node[u]=G.names.get(Integer.toString(u+1));
+            }
+        }
+        for(u=0;u<arcs;u++)
+            G.addEdge(new Edge(node[from[u]],node[to[u]],(int)capacity[u]));
+        return G;
+    }
+
+    /**
+     * Write a network as a DIMACS problem. Every arc with a capacity becomes
+     * an arc of the file; an INFINITE capacity, which other solvers do not
+     * know, is replaced by one more than the capacity leaving the source,
+     * which no cut can reach either.
+     *
+     * @param net   Network to write
+     * @param dst   Name of the file to write
+     * @throws IOException Thrown when the file can not be written.
+     */
+    public static void write(FlowNetwork net, String dst) throws IOException {
+        Writer out; // the file
+        int u,a,m; // general purpose node, arc and arc count
+
+        m=0;
+        for(a=0;a<net.arcCount;a++) {
+            if (net.capacity[a]>0) m++;
+        }
+
+        out=new BufferedWriter(new FileWriter(dst),1<<16);
+        try {
+            out.write("c maximum flow problem written by Dimacs\n");
+            out.write("p max "+net.nodeCount+" "+m+"\n");
+            out.write("n "+(net.source+1)+" s\n");
+            out.write("n "+(net.sink+1)+" t\n");
+            for(u=0;u<net.nodeCount;u++) {
+                for(a=net.first[u];a<net.first[u+1];a++) {
+                    if (net.capacity[a]==0) continue;
+                    out.write("a "+(u+1)+" "+(net.head[a]+1)+" "+
+                            ((net.capacity[a]==FlowNetwork.INFINITE)?
+                                (net.profit+1):(net.capacity[a]))+"\n");
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Produces the value of the flow leaving the source of a graph.
+     *
+     * @param G     Graph holding a flow
+     * @return      Flow leaving the source minus flow entering it
+     */
+    protected static long flow(Graph G) {
+        Iterator<Edge> eIter; // edges of the source
+        Edge e; // general purpose edge
+        long f; // the flow
+
+        f=0;
+        eIter=G.source.getEdges();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==G.source) f+=e.getFlow();
+            if (e.rightNode()==G.source) f-=e.getFlow();
+        }
+        return f;
+    }
+
+    /**
+     * Build a graph without flow for a run of the driver.
+     *
+     * @param d         The DIMACS problem, null to read a configuration file
+     * @param src       Name of the configuration file
+     * @param threads   Number of threads reading it
+     * @return          The graph to solve
+     * @throws ConfigurationException   Thrown when the configuration file
+     *                                  can not be read.
+     * @throws IllegalArgumentException Thrown when the problem does not fit
+     *                                  a Graph.
+     */
+    protected static Graph graph(Dimacs d, String src, int threads)
+                    throws ConfigurationException, IllegalArgumentException {
+        Graph G; // the graph
+
+        if (d!=null) return d.graph();
+        G=new Graph();
+        Optimiser.read(G,src,threads);
+        return G;
+    }
+
+    /**
+     * Entry point of the driver.
+     *
+     * @param args the command line arguments: "-engine name" (see
+     *              Main.selectEngine), "-threads count", "-runs count" and
+     *              "-write file", followed by the DIMACS problem,
+     *              configuration file or snapshot to read
+     */
+    public static void main(String[] args) {
+        String src,dst,name; // input, output and engine name
+        FlowEngine engine; // the engine, null for the Graph
+        FlowNetwork net; // the network solved by an engine
+        Dimacs d; // the problem, null for other files
+        Graph G; // the graph solved without an engine
+        int runs,threads,i; // options and argument iterator
+        long flow,start; // flow value and start of a run
+
+        src=null;
+        dst=null;
+        name="pushrelabel-cut";
+        engine=null;
+        runs=1;
+        threads=Runtime.getRuntime().availableProcessors();
+        try {
+            for(i=0;i<args.length;i++) {
+                if (args[i].equals("-engine") && i+1<args.length)
+                    name=args[++i];
+                else if (args[i].equals("-threads") && i+1<args.length)
+                    threads=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-runs") && i+1<args.length)
+                    runs=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-write") && i+1<args.length)
+                    dst=args[++i];
+                else
+                    src=args[i];
+            }
+            if (src==null)
+                throw new IllegalArgumentException("No file given.");
+            if (runs<1 || threads<1)
+                throw new IllegalArgumentException(
+                        "Attempted to use less than one run or thread.");
+            engine=Main.selectEngine(name,threads);
+            if (engine==null && dst==null && Snapshot.isSnapshot(src))
+                throw new IllegalArgumentException(
+                        "A snapshot can only be solved by a FlowEngine");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid command line:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+
+        d=null;
+        net=null;
+        try {
+            if (isDimacs(src)) {
+                d=new Dimacs(src);
+                if (engine!=null || dst!=null) net=d.network();
+            } else if (engine!=null || dst!=null) {
+                net=Optimiser.load(src,threads);
+            }
+            if (dst!=null) {
+                write(net,dst);
+                System.exit(0);
+            }
+        } catch (IOException e) {
+            System.err.println("File '"+src+"' could not be converted:");
+            System.err.println(e.toString());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("DIMACS file '"+src+"' is malformed:");
+            System.err.println(e.toString());
+            System.exit(1);
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage()+":");
+            System.err.println(e.getCause().toString());
+            System.exit(1);
+        }
+
+        System.out.println("file engine flow ms");
+        try {
+            for(i=0;i<runs;i++) {
+                if (engine!=null) {
+                    net.reset();
+                    start=System.nanoTime();
+                    flow=engine.maxFlow(net);
+                } else {
+                    G=graph(d,src,threads); // every run needs a new graph
+                    start=System.nanoTime();
+                    G.maximiseFlow(false);
+                    flow=flow(G);
+                }
+                System.out.printf("%s %s %d %.3f%n",src,name,flow,
+                                            (System.nanoTime()-start)/1e6);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("DIMACS file '"+src+"' does not fit the Graph:");
+            System.err.println(e.toString());
+            System.exit(1);
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage()+":");
+            System.err.println(e.getCause().toString());
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+}
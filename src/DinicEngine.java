@@ -0,0 +1,215 @@
+// File: DinicEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+
+/**
+ * Dinic's maximum flow algorithm on the arrays of a FlowNetwork. Each phase
+ * labels all nodes with their breadth first distance from the source once,
+ * and then pushes a blocking flow through the arcs going exactly one level
+ * up. A current arc pointer per node makes sure an arc that became useless
+ * during a phase is never looked at again in that phase. The depth first
+ * search is done with an explicit path instead of recursion so that long
+ * dependency chains can not overflow the stack. Given a ParallelSearch the
+ * levels of huge networks are built on several threads.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class DinicEngine implements FlowEngine {
+    /**
+     * The queue used in the breadth first search building the levels.
+     */
+    protected int[] queue;
+    /**
+     * Distance of each node from the source in the residual network, -1 for
+     * nodes that can not be reached or can no longer reach the sink.
+     */
+    protected int[] level;
+    /**
+     * The next arc to try for each node in the current phase.
+     */
+    protected int[] current;
+    /**
+     * The arcs of the path from the source to the node being advanced.
+     */
+    protected int[] path;
+    /**
+     * The search building the levels, null to build them on the calling
+     * thread with the queue.
+     */
+    protected ParallelSearch search;
+    /**
+     * The root of the search, the source.
+     */
+    protected int[] roots;
+
+    /**
+     * Constructor for an engine building the levels on the calling thread.
+     */
+    public DinicEngine() {
+        search=null;
+    }
+
+    /**
+     * Constructor for an engine building the levels with a ParallelSearch.
+     *
+     * @param t     Number of threads searching
+     * @throws IllegalArgumentException Thrown when t is less than 1.
+     */
+    public DinicEngine(int t) throws IllegalArgumentException {
+        search=new ParallelSearch(t);
+        roots=new int[1];
+    }
+
+    /**
+     * Make sure the work arrays fit the given network. They are kept
+     * between calls so that solving networks of the same size repeatedly
+     * does not allocate.
+     *
+     * @param net   Network about to be solved
+     */
+    protected void prepare(FlowNetwork net) {
+        if (queue==null || queue.length<net.nodeCount) {
+            queue=new int[net.nodeCount];
+            level=new int[net.nodeCount];
+            current=new int[net.nodeCount];
+            path=new int[net.nodeCount];
+        }
+    }
+
+    /**
+     * Label every node with its distance from the source over arcs with
+     * residual capacity. Nodes further away than the sink are not needed
+     * and are left unlabelled.
+     *
+     * @param net   Network to label
+     * @return      true if the sink was reached, false if the flow is maximal
+     */
+    protected boolean buildLevels(FlowNetwork net) {
+        int[] first,head; // arrays of the network
+        long[] residual; // residual capacities of the network
+        int qHead,qTail; // queue pointers
+        int u,v,a; // general purpose nodes and arc
+
+        if (search!=null) {
+            roots[0]=net.source;
+            search.search(net,roots,1,false,-1,net.sink,level);
+            return level[net.sink]>=0;
+        }
+
+        first=net.first;
+        head=net.head;
+        residual=net.residual;
+
+        Arrays.fill(level,0,net.nodeCount,-1);
+        level[net.source]=0;
+        queue[0]=net.source;
+        qHead=0;
+        qTail=1;
+
+        while(qHead<qTail) {
+            u=queue[qHead++];
+            if (level[net.sink]>=0 && level[u]>=level[net.sink]) break;
+            for(a=first[u];a<first[u+1];a++) {
+                v=head[a];
+                if (level[v]<0 && residual[a]>0) {
+                    level[v]=level[u]+1;
+                    queue[qTail++]=v;
+                }
+            }
+        }
+
+        return level[net.sink]>=0;
+    }
+
+    /**
+     * Push a blocking flow through the level graph. The search advances
+     * along admissible arcs until it reaches the sink, augments the path
+     * found and retreats to the tail of the first saturated arc. A node
+     * without admissible arcs left is removed from the level graph and the
+     * search retreats one arc.
+     *
+     * @param net   Network labelled by buildLevels()
+     * @return      The value of the blocking flow
+     */
+    protected long blockingFlow(FlowNetwork net) {
+        int[] first,head,mate; // arrays of the network
+        long[] residual; // residual capacities of the network
+        long flow,augment; // total pushed and bottleneck of a path
+        int depth,u,a,i,cut; // path length, general purpose node and arcs
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        residual=net.residual;
+        System.arraycopy(first,0,current,0,net.nodeCount);
+
+        flow=0;
+        depth=0;
+        u=net.source;
+        while(true) {
+            if (u==net.sink) {
+                // Find the bottleneck and augment the path
+                augment=Long.MAX_VALUE;
+                for(i=0;i<depth;i++)
+                    augment=Math.min(augment,residual[path[i]]);
+                cut=depth;
+                for(i=0;i<depth;i++) {
+                    a=path[i];
+                    residual[a]-=augment;
+                    residual[mate[a]]+=augment;
+                    if (residual[a]==0 && cut==depth) cut=i;
+                }
+                flow+=augment;
+
+                // Continue from the tail of the first saturated arc
+                depth=cut;
+                u=(depth==0)?(net.source):(head[path[depth-1]]);
+                continue;
+            }
+
+            // Advance along the first admissible arc
+            for(a=current[u];a<first[u+1];a++) {
+                if (residual[a]>0 && level[head[a]]==level[u]+1) break;
+            }
+            current[u]=a;
+            if (a<first[u+1]) {
+                path[depth++]=a;
+                u=head[a];
+                continue;
+            }
+
+            // Dead end, remove u from the level graph and retreat
+            level[u]=-1;
+            if (depth==0) break;
+            a=path[--depth];
+            u=head[mate[a]];
+            current[u]++;
+        }
+
+        return flow;
+    }
+
+    /**
+     * Run phases of level building and blocking flow until the sink can no
+     * longer be reached.
+     *
+     * @param net   Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork net) {
+        long flow; // total flow pushed
+
+        prepare(net);
+        flow=0;
+        while(buildLevels(net)) {
+            flow+=blockingFlow(net);
+        }
+
+        return flow;
+    }
+}
@@ -27,6 +27,10 @@ protected Node left;
      * The right or destination node for this edge
      */
 protected Node right;
+/**
+     * Indicator flag that this edge was removed from its graph
+     */
+protected boolean removed;
 
 /**
      * Edge constructor, sets the edge class variables to sensible values.
@@ -40,6 +44,7 @@ protected Node right;
         left=l;
         right=r;
         flow=0;
+        removed=false;
     }
  
     /**
@@ -50,6 +55,15 @@ protected Node right;
         return capacity;
     }
  
+    /**
+     * Change the capacity of this edge. The flow is not touched, so lowering
+     * the capacity below the flow has to be followed by reducing the flow.
+     * @param c the new capacity of this edge
+     */
+    public void setCapacity(Integer c) {
+        capacity=c;
+    }
+
     /**
      * Queries the flow of this edge
      * @return the value of the class variable flow
@@ -90,4 +104,22 @@ protected Node right;
     public Node rightNode() {
         return right;
     }
+
+    /**
+     * Queries whether this edge was removed from its graph
+     * @return true when the edge was removed
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Mark this edge as removed from its graph. Its flow must have been
+     * taken off already; its capacity is set to 0, so that no search uses
+     * it while it waits in the edge lists to be compacted away.
+     */
+    public void remove() {
+        capacity=0;
+        removed=true;
+    }
 }
\ No newline at end of file
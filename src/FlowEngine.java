@@ -0,0 +1,25 @@
+// File: FlowEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+/**
+ * A maximum flow algorithm working on the arrays of a FlowNetwork. An engine
+ * only changes the residual capacities of the network; the minimal cut and
+ * the resulting revenue are extracted by the network itself afterwards.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public interface FlowEngine {
+    /**
+     * Push a maximum flow from the source to the sink of the network. The
+     * residual capacities of the network are expected to describe a valid
+     * flow (normally the zero flow after FlowNetwork.reset()) when called.
+     *
+     * @param net   Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork net);
+}
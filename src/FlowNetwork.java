@@ -0,0 +1,448 @@
+// File: FlowNetwork.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.nio.charset.*;
+
+/**
+ * A frozen, array based version of a Graph on which a FlowEngine can run
+ * without allocating objects or unboxing values. The nodes are numbered
+ * densely and all arcs leaving a node are stored next to each other
+ * (compressed sparse row). Every edge of the graph is represented by a
+ * forward arc carrying its capacity and a reverse arc with capacity 0, each
+ * knowing the position of the other (its mate). Capacities are longs so that
+ * neither the dependency edges nor the sum of all profits can overflow.
+ * A network loaded from a Snapshot keeps the names of its nodes as UTF-8
+ * bytes and only makes a String of a name when it is asked for.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class FlowNetwork {
+    /**
+     * Capacity used for dependency edges. It is far larger than any sum of
+     * profits, but leaves enough head room that adding flow to it can not
+     * overflow.
+     */
+    public static final long INFINITE=Long.MAX_VALUE/4;
+    /**
+     * The character set of names kept as bytes.
+     */
+    protected static final Charset UTF8=Charset.forName("UTF-8");
+    /**
+     * The number of nodes in this network.
+     */
+    protected int nodeCount;
+    /**
+     * The number of arcs in this network (twice the number of edges).
+     */
+    protected int arcCount;
+    /**
+     * The source (or s) node.
+     */
+    protected int source;
+    /**
+     * The sink (or t) node.
+     */
+    protected int sink;
+    /**
+     * The names of the nodes, indexed by node number, null when they are
+     * kept as bytes.
+     */
+    protected String[] names;
+    /**
+     * The UTF-8 bytes of all names when names is null.
+     */
+    protected byte[] namePool;
+    /**
+     * The name of node v is found in namePool at positions nameStart[v] up
+     * to nameStart[v+1].
+     */
+    protected int[] nameStart;
+    /**
+     * The arcs of node v are found at positions first[v] up to first[v+1].
+     */
+    protected int[] first;
+    /**
+     * The node each arc leads to.
+     */
+    protected int[] head;
+    /**
+     * The position of the arc running in the opposite direction.
+     */
+    protected int[] mate;
+    /**
+     * The original capacity of each arc, 0 for reverse arcs.
+     */
+    protected long[] capacity;
+    /**
+     * The capacity left on each arc by the current flow.
+     */
+    protected long[] residual;
+    /**
+     * The sum of the capacities of all arcs leaving the source.
+     */
+    protected long profit;
+    /**
+     * Flags marking the nodes on the source side of the minimal cut, as
+     * determined by the last call of findCut().
+     */
+    protected boolean[] chosen;
+    /**
+     * A queue used by the breadth first search of findCut().
+     */
+    protected int[] queue;
+    /**
+     * The distance of every node from the source side found by a
+     * ParallelSearch in findCut(), initialised when first needed.
+     */
+    protected int[] distance;
+
+    /**
+     * Constructor for the FlowNetwork class. Builds the compressed arrays
+     * from a plain list of edges and sets the residual capacities to the
+     * zero flow.
+     *
+     * @param label     Names of the nodes, the length gives the node count
+     * @param s         Number of the source node
+     * @param t         Number of the sink node
+     * @param m         Number of edges
+     * @param from      Left hand node of each edge
+     * @param to        Right hand node of each edge
+     * @param c         Capacity of each edge
+     * @throws IllegalArgumentException Thrown when an edge refers to a node
+     *                                  that does not exist or has a negative
+     *                                  capacity.
+     */
+    public FlowNetwork(String[] label, int s, int t, int m, int[] from,
+                        int[] to, long[] c) throws IllegalArgumentException {
+        this(label,s,t,m,from,to,c,null);
+    }
+
+    /**
+     * Constructor for the FlowNetwork class. Builds the compressed arrays
+     * from a plain list of edges and sets the residual capacities to the
+     * given flow, for instance the flow a Graph was solved with.
+     *
+     * @param label     Names of the nodes, the length gives the node count
+     * @param s         Number of the source node
+     * @param t         Number of the sink node
+     * @param m         Number of edges
+     * @param from      Left hand node of each edge
+     * @param to        Right hand node of each edge
+     * @param c         Capacity of each edge
+     * @param f         Flow through each edge, null for the zero flow
+     * @throws IllegalArgumentException Thrown when an edge refers to a node
+     *                                  that does not exist or has a negative
+     *                                  capacity, or its flow does not fit
+     *                                  its capacity.
+     */
+    public FlowNetwork(String[] label, int s, int t, int m, int[] from,
+            int[] to, long[] c, long[] f) throws IllegalArgumentException {
+        int[] pos; // next free arc position per node
+        int i,a,b; // general purpose counter and arcs
+
+        nodeCount=label.length;
+        arcCount=2*m;
+        source=s;
+        sink=t;
+        names=label;
+
+        // Count the arcs of every node and turn the counts into offsets
+        first=new int[nodeCount+1];
+        for(i=0;i<m;i++) {
+            if (from[i]<0 || from[i]>=nodeCount || to[i]<0 ||
+                                            to[i]>=nodeCount || c[i]<0)
+                throw new IllegalArgumentException(
+                        "Attempted to add an invalid edge.");
+            first[from[i]+1]++;
+            first[to[i]+1]++;
+        }
+        for(i=0;i<nodeCount;i++) first[i+1]+=first[i];
+
+        // Place every edge as a forward arc and its reverse arc
+        pos=new int[nodeCount];
+        System.arraycopy(first,0,pos,0,nodeCount);
+        head=new int[arcCount];
+        mate=new int[arcCount];
+        capacity=new long[arcCount];
+        for(i=0;i<m;i++) {
+            a=pos[from[i]]++;
+            b=pos[to[i]]++;
+            head[a]=to[i];
+            head[b]=from[i];
+            mate[a]=b;
+            mate[b]=a;
+            capacity[a]=c[i];
+            if (from[i]==source) profit+=c[i];
+        }
+
+        residual=new long[arcCount];
+        chosen=new boolean[nodeCount];
+        queue=new int[nodeCount];
+        reset();
+        if (f==null) return;
+
+        // Place the edges once more to find their arcs again
+        System.arraycopy(first,0,pos,0,nodeCount);
+        for(i=0;i<m;i++) {
+            a=pos[from[i]]++;
+            b=pos[to[i]]++;
+            if (f[i]<0 || f[i]>c[i])
+                throw new IllegalArgumentException(
+                        "Attempted to add an edge with an invalid flow.");
+            residual[a]-=f[i];
+            residual[b]+=f[i];
+        }
+    }
+
+    /**
+     * Constructor for a FlowNetwork whose compressed arrays are already
+     * built, as stored in a Snapshot. The arrays are used as they are.
+     *
+     * @param s         Number of the source node
+     * @param t         Number of the sink node
+     * @param f         Position of the first arc of every node, followed by
+     *                  the arc count
+     * @param h         Node each arc leads to
+     * @param r         Position of the mate of each arc
+     * @param c         Capacity of each arc
+     * @param pool      UTF-8 bytes of all names
+     * @param start     Position of every name in pool, followed by the size
+     *                  of pool
+     */
+    protected FlowNetwork(int s, int t, int[] f, int[] h, int[] r, long[] c,
+                                                    byte[] pool, int[] start) {
+        int a; // general purpose arc
+
+        nodeCount=f.length-1;
+        arcCount=h.length;
+        source=s;
+        sink=t;
+        first=f;
+        head=h;
+        mate=r;
+        capacity=c;
+        namePool=pool;
+        nameStart=start;
+        for(a=first[source];a<first[source+1];a++) profit+=capacity[a];
+
+        residual=new long[arcCount];
+        chosen=new boolean[nodeCount];
+        queue=new int[nodeCount];
+        reset();
+    }
+
+    /**
+     * Constructor for a FlowNetwork sharing the nodes, arcs and names of
+     * another one, see share().
+     *
+     * @param net   Network to share the arrays of
+     * @param c     Capacity of each arc
+     */
+    protected FlowNetwork(FlowNetwork net, long[] c) {
+        int a; // general purpose arc
+
+        nodeCount=net.nodeCount;
+        arcCount=net.arcCount;
+        source=net.source;
+        sink=net.sink;
+        names=net.names;
+        namePool=net.namePool;
+        nameStart=net.nameStart;
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        capacity=c;
+        for(a=first[source];a<first[source+1];a++) profit+=capacity[a];
+
+        residual=new long[arcCount];
+        chosen=new boolean[nodeCount];
+        queue=new int[nodeCount];
+        reset();
+    }
+
+    /**
+     * Produces a network with the nodes, arcs and names of this one but
+     * with the given capacities and a flow of its own. The arrays of the
+     * structure are shared, not copied; no engine changes them, so several
+     * threads can solve networks sharing them at the same time, each
+     * variant costing no more than its capacities and flow.
+     *
+     * @param c     Capacity of each arc, of which the arc of a dependency
+     *              must stay INFINITE
+     * @return      The new network, with the zero flow
+     * @throws IllegalArgumentException Thrown when c does not have a
+     *                                  capacity for every arc.
+     */
+    public FlowNetwork share(long[] c) throws IllegalArgumentException {
+        if (c.length!=arcCount)
+            throw new IllegalArgumentException(
+                    "Attempted to share a network with a wrong arc count.");
+        return new FlowNetwork(this,c);
+    }
+
+    /**
+     * Reset the residual capacities to those of the zero flow so that the
+     * network can be solved again.
+     */
+    public void reset() {
+        System.arraycopy(capacity,0,residual,0,arcCount);
+    }
+
+    /**
+     * Produces the number of nodes in this network
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Produces the name of a node
+     * @param v the number of the node
+     * @return the name of the node
+     */
+    public String getName(int v) {
+        if (names!=null) return names[v];
+        return new String(namePool,nameStart[v],nameStart[v+1]-nameStart[v],
+                                                                    UTF8);
+    }
+
+    /**
+     * Produces the sum of the capacities leaving the source, which is the
+     * revenue if every technology could be taken for free.
+     * @return the sum of all profits
+     */
+    public long getProfit() {
+        return profit;
+    }
+
+    /**
+     * Mark all nodes which can still be reached from the source over arcs
+     * with residual capacity. After a maximum flow these are exactly the
+     * nodes on the source side of the minimal cut. If the residual
+     * capacities describe a maximum preflow instead, the nodes still holding
+     * excess belong to the source side as well (in a proper flow the excess
+     * would be returned to the source, opening a residual path to them), so
+     * the search starts from those nodes too.
+     *
+     * @return flags marking the source side of the cut, indexed by node
+     */
+    public boolean[] findCut() {
+        return findCut(null);
+    }
+
+    /**
+     * Mark the source side of the minimal cut like findCut(), searching the
+     * residual network with the given ParallelSearch, which pays off on
+     * networks with tens of millions of arcs.
+     *
+     * @param search    Search to use, null to search on the calling thread
+     * @return flags marking the source side of the cut, indexed by node
+     */
+    public boolean[] findCut(ParallelSearch search) {
+        long inflow; // flow entering a node minus flow leaving it
+        int qHead,qTail; // queue pointers
+        int u,v,a; // general purpose nodes and arc
+
+        Arrays.fill(chosen,false);
+        chosen[source]=true;
+        queue[0]=source;
+        qHead=0;
+        qTail=1;
+        for(u=0;u<nodeCount;u++) {
+            if (u==source || u==sink) continue;
+            inflow=0;
+            for(a=first[u];a<first[u+1];a++) inflow+=residual[a]-capacity[a];
+            if (inflow>0) {
+                chosen[u]=true;
+                queue[qTail++]=u;
+            }
+        }
+
+        if (search!=null) {
+            if (distance==null) distance=new int[nodeCount];
+            search.search(this,queue,qTail,false,-1,-1,distance);
+            for(v=0;v<nodeCount;v++) chosen[v]=(distance[v]>=0);
+            return chosen;
+        }
+
+        while(qHead<qTail) {
+            u=queue[qHead++];
+            for(a=first[u];a<first[u+1];a++) {
+                v=head[a];
+                if (!chosen[v] && residual[a]>0) {
+                    chosen[v]=true;
+                    queue[qTail++]=v;
+                }
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Using the cut marked by findCut() this calculates the revenue: the sum
+     * of all profits minus the capacity of the arcs leaving the cut.
+     *
+     * @return the revenue belonging to the minimal cut
+     */
+    public long getRevenue() {
+        long c; // capacity of the cut
+        int u,a; // general purpose node and arc
+
+        c=0;
+        for(u=0;u<nodeCount;u++) {
+            if (!chosen[u]) continue;
+            for(a=first[u];a<first[u+1];a++) {
+                if (capacity[a]>0 && !chosen[head[a]]) c+=capacity[a];
+            }
+        }
+
+        return profit-c;
+    }
+
+    /**
+     * Print the revenue belonging to the cut marked by findCut().
+     */
+    protected void printRevenue() {
+        System.out.print(getRevenue());
+    }
+
+    /**
+     * Print the names of all nodes on the source side of the cut marked by
+     * findCut() with exception of the source node name, in the same order
+     * and layout as Graph.printChosen().
+     */
+    protected void printChosen() {
+        StringBuilder out; // collected output
+        int v; // general purpose node
+
+        out=new StringBuilder();
+        for(v=0;v<nodeCount;v++) {
+            if (chosen[v] && v!=source) out.append(' ').append(getName(v));
+        }
+        System.out.print(out);
+    }
+
+    /**
+     * Apply the given engine to this network and print the resulting
+     * maximum revenue and names of the nodes in the minimal cut, just like
+     * Graph.optimise() does.
+     *
+     * @param engine    Maximum flow algorithm to apply
+     */
+    public void optimise(FlowEngine engine) {
+        reset();
+        engine.maxFlow(this);
+        findCut();
+
+        printRevenue();
+        printChosen();
+        System.out.println(""); // end with a newline
+    }
+}
@@ -0,0 +1,400 @@
+// File: Generator.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Writes random configuration files (see Main for the format) of a chosen
+ * shape and size, for example:
+ * <PRE>
+ * java Generator -shape layered -nodes 1000000 -deps 5000000 -size 20 big.txt
+ * </PRE>
+ * The technologies are named t0, t1, ... and every dependency is written
+ * as soon as it is drawn, so nothing but a fixed buffer is kept in memory
+ * and files with hundreds of millions of dependencies can be made. The
+ * same seed (-seed, default 1) and parameters always give the same file.
+ * Without a file name the configuration is written to System.out.
+ * <P>
+ * Every shape first writes the dependencies that give it its structure and
+ * fills up to -deps with random dependencies that keep it:
+ * <UL>
+ * <LI>random: dependencies between any two technologies, cycles included.
+ * <LI>dag: every technology only depends on technologies with a lower
+ *     number, so there are no cycles.
+ * <LI>layered: the technologies are spread over -size layers and depend on
+ *     technologies of the layer before, like a technology tree.
+ * <LI>chain: chains of -size technologies each depending on the one
+ *     before, filled up as a dag.
+ * <LI>bipartite: the first -size technologies are products, depending on
+ *     the others, the components.
+ * <LI>scc: groups of -size technologies depending on each other in a
+ *     cycle, filled up with dependencies within the groups and from later
+ *     groups on earlier ones.
+ * </UL>
+ * Costs and profits are drawn from 0 up to -range (default 100). With
+ * "-skew e" a value is range*u^e for a uniform u in [0,1), so that for e
+ * above 1 most values are small and a few are large.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Generator {
+    /**
+     * The shape names accepted by the -shape option.
+     */
+    protected static final String SHAPES=
+                                    "random dag layered chain bipartite scc";
+    /**
+     * Size of the output buffer.
+     */
+    protected static final int SIZE=1<<16;
+    /**
+     * The stream written to.
+     */
+    protected OutputStream out;
+    /**
+     * Bytes waiting to be written.
+     */
+    protected byte[] buf;
+    /**
+     * Number of bytes in buf.
+     */
+    protected int count;
+    /**
+     * The random generator.
+     */
+    protected Random random;
+    /**
+     * The shape, one of the names in SHAPES.
+     */
+    protected String shape;
+    /**
+     * Number of technologies.
+     */
+    protected int nodes;
+    /**
+     * Number of dependencies.
+     */
+    protected int deps;
+    /**
+     * Layer count, chain length, product count or group size, depending on
+     * the shape.
+     */
+    protected int size;
+    /**
+     * Largest cost or profit.
+     */
+    protected int range;
+    /**
+     * Exponent of the cost and profit distribution.
+     */
+    protected double skew;
+    /**
+     * Number of layers, chains or groups.
+     */
+    protected int parts;
+
+    /**
+     * Constructor for the Generator class.
+     *
+     * @param sh    Shape of the dependencies, one of the names in SHAPES
+     * @param n     Number of technologies
+     * @param m     Number of dependencies
+     * @param k     Layer count, chain length, product count or group size
+     * @param r     Largest cost or profit
+     * @param e     Exponent of the cost and profit distribution
+     * @param seed  Seed of the random generator
+     * @throws IllegalArgumentException Thrown when the shape is unknown or
+     *                                  the parameters do not fit it.
+     */
+    public Generator(String sh, int n, int m, int k, int r, double e,
+                                long seed) throws IllegalArgumentException {
+        if (!Arrays.asList(SHAPES.split(" ")).contains(sh))
+            throw new IllegalArgumentException(
+                    "Unknown shape '"+sh+"', expected one of: "+SHAPES);
+        if (n<2 || m<0 || r<0 || e<=0)
+            throw new IllegalArgumentException(
+                    "Attempted to generate with invalid sizes.");
+        if ((k<1 || k>n) && !sh.equals("random") && !sh.equals("dag"))
+            throw new IllegalArgumentException(
+                    "The -size of shape "+sh+" must lie between 1 and "+n);
+        if ((sh.equals("layered") && k<2) || (sh.equals("bipartite") && k==n))
+            throw new IllegalArgumentException(
+                    "Shape "+sh+" needs two non empty parts.");
+        buf=new byte[SIZE];
+        shape=sh;
+        nodes=n;
+        deps=m;
+        size=k;
+        range=r;
+        skew=e;
+        parts=(sh.equals("chain") || sh.equals("scc"))?((n+k-1)/k):(k);
+        random=new Random(seed);
+    }
+
+    /**
+     * Make room for the given number of bytes in the buffer.
+     *
+     * @param n     Number of bytes needed
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void room(int n) throws IOException {
+        if (count+n>buf.length) {
+            out.write(buf,0,count);
+            count=0;
+        }
+    }
+
+    /**
+     * Append a single ASCII character.
+     *
+     * @param c     Character to append
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void put(char c) throws IOException {
+        room(1);
+        buf[count++]=(byte)c;
+    }
+
+    /**
+     * Append the decimal digits of a number that is not negative.
+     *
+     * @param v     Number to append
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void put(int v) throws IOException {
+        int i,j; // ends of the digits
+        byte b; // for reversing the digits
+
+        room(10);
+        i=count;
+        do {
+            buf[count++]=(byte)('0'+v%10);
+            v/=10;
+        } while(v>0);
+        for(j=count-1;i<j;i++,j--) {
+            b=buf[i];
+            buf[i]=buf[j];
+            buf[j]=b;
+        }
+    }
+
+    /**
+     * Append the name of a technology.
+     *
+     * @param i     Number of the technology
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void name(int i) throws IOException {
+        put('t');
+        put(i);
+    }
+
+    /**
+     * Append a dependency line.
+     *
+     * @param f     Technology that depends on the other
+     * @param t     Technology depended on
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void dependency(int f, int t) throws IOException {
+        name(f);
+        put(' ');
+        put('-');
+        put('>');
+        put(' ');
+        name(t);
+        put('\n');
+    }
+
+    /**
+     * Draw a cost or profit.
+     * @return a value from 0 up to range
+     */
+    protected int value() {
+        if (skew==1) return random.nextInt(range+1);
+        return (int)Math.min(range,range*Math.pow(random.nextDouble(),skew)+
+                                                                        0.5);
+    }
+
+    /**
+     * Draw a number from the given range.
+     *
+     * @param from  Smallest number
+     * @param to    Number after the largest one
+     * @return      The number drawn
+     */
+    protected int draw(int from, int to) {
+        return from+random.nextInt(to-from);
+    }
+
+    /**
+     * Produces the first technology of a layer, chain or group. Layers are
+     * as equal in size as possible, chains and groups have size
+     * technologies except for the last.
+     * @param l the number of the layer, chain or group
+     * @return the number of the first technology in it, nodes for parts
+     */
+    protected int start(int l) {
+        if (shape.equals("chain") || shape.equals("scc"))
+            return (int)Math.min((long)l*size,nodes);
+        return (int)((long)l*nodes/size);
+    }
+
+    /**
+     * Write a random dependency between two different technologies of
+     * which the first has the higher number.
+     *
+     * @param from  Smallest technology allowed
+     * @param to    Technology after the largest one allowed
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void downward(int from, int to) throws IOException {
+        int f,t; // the technologies
+
+        f=draw(from+1,to);
+        t=draw(from,f);
+        dependency(f,t);
+    }
+
+    /**
+     * Write the counts, the technologies and the dependencies.
+     *
+     * @param o     Stream to write the configuration to
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    public void generate(OutputStream o) throws IOException {
+        int i,f,t,l,g,m; // technologies, layer, group and written count
+
+        out=o;
+        count=0;
+        put(nodes);
+        put(' ');
+        put(deps);
+        put('\n');
+        for(i=0;i<nodes;i++) {
+            name(i);
+            put(' ');
+            put(value()); // cost
+            put(' ');
+            put(value()); // profit
+            put('\n');
+        }
+
+        m=0;
+        if (shape.equals("chain") || shape.equals("scc")) {
+            // The structure: every technology after the first of its
+            // chain or group depends on the one before it, and the first
+            // of a group on the last
+            for(g=0;g<parts && m<deps;g++) {
+                for(i=start(g)+1;i<start(g+1) && m<deps;i++,m++)
+                    dependency(i,i-1);
+                if (shape.equals("scc") && start(g+1)-start(g)>1 && m<deps) {
+                    dependency(start(g),start(g+1)-1);
+                    m++;
+                }
+            }
+        }
+
+        for(;m<deps;m++) {
+            if (shape.equals("random")) {
+                f=draw(0,nodes);
+                t=draw(0,nodes-1);
+                if (t>=f) t++; // never the same technology
+                dependency(f,t);
+            } else if (shape.equals("dag") || shape.equals("chain")) {
+                downward(0,nodes);
+            } else if (shape.equals("layered")) {
+                l=draw(1,size);
+                dependency(draw(start(l),start(l+1)),
+                                            draw(start(l-1),start(l)));
+            } else if (shape.equals("bipartite")) {
+                dependency(draw(0,size),draw(size,nodes));
+            } else { // scc
+                g=draw(0,parts);
+                if (start(g+1)-start(g)>1 && random.nextBoolean()) {
+                    f=draw(start(g),start(g+1));
+                    t=draw(start(g),start(g+1)-1);
+                    if (t>=f) t++;
+                    dependency(f,t);
+                } else {
+                    downward(0,nodes); // may stay within a group as well
+                }
+            }
+        }
+
+        out.write(buf,0,count);
+        count=0;
+        out.flush();
+    }
+
+    /**
+     * Entry point of the generator.
+     *
+     * @param args the command line arguments: "-shape name", "-nodes count",
+     *              "-deps count", "-size count", "-range value", "-skew e"
+     *              and "-seed value", optionally followed by the name of the
+     *              file to write
+     */
+    public static void main(String[] args) {
+        OutputStream o; // where the configuration goes
+        String dst; // name of the file to write, null for System.out
+        String shape; // shape of the dependencies
+        int nodes,deps,size,range,i; // parameters and argument iterator
+        double skew; // exponent of the value distribution
+        long seed; // seed of the random generator
+        Generator g; // the generator
+
+        dst=null;
+        shape="dag";
+        nodes=1000;
+        deps=4000;
+        size=10;
+        range=100;
+        skew=1;
+        seed=1;
+        g=null;
+        try {
+            for(i=0;i<args.length;i++) {
+                if (args[i].equals("-shape") && i+1<args.length)
+                    shape=args[++i];
+                else if (args[i].equals("-nodes") && i+1<args.length)
+                    nodes=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-deps") && i+1<args.length)
+                    deps=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-size") && i+1<args.length)
+                    size=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-range") && i+1<args.length)
+                    range=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-skew") && i+1<args.length)
+                    skew=Double.parseDouble(args[++i]);
+                else if (args[i].equals("-seed") && i+1<args.length)
+                    seed=Long.parseLong(args[++i]);
+                else
+                    dst=args[i];
+            }
+            g=new Generator(shape,nodes,deps,size,range,skew,seed);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid command line:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+
+        try {
+            o=(dst==null)?(System.out):(new FileOutputStream(dst));
+            g.generate(o);
+            if (dst!=null) o.close();
+        } catch (IOException e) {
+            System.err.println("Configuration file '"+dst+
+                                                "' could not be written:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+}
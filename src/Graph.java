@@ -4,10 +4,15 @@
 // Copyright (c) 2011 Michiel Meijer
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
  
 /**
- * This is a basic implementation of a graph with a Ford-Fulkerson algorithm
- * to find the minimal cut and print the result.
+ * This is a basic implementation of a graph with a Ford-Fulkerson algorithm
+ * to find the minimal cut and print the result. The flow is kept after
+ * optimise(), so technologies and dependencies can still be added or
+ * removed and profits and costs changed; a following optimise() then
+ * starts from the flow found before instead of from scratch.
  *
  * author  Michiel Meijer <m.meijer@cinis.com>
  * @version 2011.0327
@@ -40,6 +45,40 @@ public class Graph {
      * a search is performed.
      */
     protected ArrayDeque<Node> queue;
+    /**
+     * The smallest residual capacity an edge must offer to be used by a
+     * breadth first search. It is 1 unless optimise() runs in capacity
+     * scaling mode.
+     */
+    protected int delta;
+    /**
+     * Whether findPath() searches from the source and the sink at the same
+     * time, see setBidirectional().
+     */
+    protected boolean bidirectional;
+    /**
+     * The queue of the backward half of a bidirectional search, initialised
+     * when first needed.
+     */
+    protected ArrayDeque<Node> backQueue;
+    /**
+     * The Counters the progress of a solve is published to, null when no
+     * solve is running.
+     */
+    protected SolverStats.Counters stats;
+    /**
+     * Number of edges looked at by the last findPath().
+     */
+    protected int scanned;
+    /**
+     * Number of nodes taken from the queue by the last findPath().
+     */
+    protected int visited;
+    /**
+     * Number of removed nodes and edges still in the node and edge lists,
+     * see compact().
+     */
+    protected int dropped;
  
     /**
      * Constructor for the Graph class. Initialises all variables defined
@@ -53,13 +92,33 @@ public class Graph {
         nodes=new ArrayDeque<Node>();
         source=new Node("source"); // Not on hash to avoid input clashes
         nodes.add(source);
+        source.setIndex(0);
         sink=new Node("sink"); // Not on hash to avoid input clashes
         nodes.add(sink);
+        sink.setIndex(1);
  
         // Setup Edges and Names, the queue is not setup untill needed
         edges=new ArrayDeque<Edge>();
-        names=new HashMap<String,Node>();
-    }
+        names=new HashMap<String,Node>();
+        delta=1;
+        bidirectional=false;
+        dropped=0;
+    }
+
+    /**
+     * Choose how findPath() searches for augmenting paths. A bidirectional
+     * search grows a breadth first search from the source and one from the
+     * sink, each time expanding a node of the smaller frontier, until they
+     * meet. On wide and shallow graphs the two searches meet long before
+     * either of them would have covered the graph. The result is the same
+     * either way.
+     *
+     * @param b     true to search from both ends, false to search from the
+     *              source only
+     */
+    public void setBidirectional(boolean b) {
+        bidirectional=b;
+    }
  
     /**
      * Given a name , profit and cost of a technology a new graph node
@@ -86,6 +145,7 @@ public class Graph {
                     "Attempted to redefine existing technology.");
  
         n=new Node(name);
+        n.setIndex(nodes.size());
         nodes.add(n);
         names.put(name,n);
  
@@ -119,7 +179,6 @@ public class Graph {
     public void addDependency(String from, String to)
                                                 throws NullPointerException {
         Node f,t;
-        Edge e;
  
         f=names.get(from);
         t=names.get(to);
@@ -127,12 +186,380 @@ public class Graph {
             throw new NullPointerException(
                     "Attempted to connect undefined technologies.");
  
-        e=new Edge(f,t,Integer.MAX_VALUE); // MAX_VALUE instead of infinity
-        edges.add(e);
-        f.addEdge(e);
-        t.addEdge(e);
+        addDependency(f,t);
     }
+
+    /**
+     * Add a dependency between two nodes of this graph, see
+     * addDependency(String,String).
+     *
+     * @param f     Dependant technology
+     * @param t     Required technology
+     */
+    protected void addDependency(Node f, Node t) {
+        addEdge(new Edge(f,t,Integer.MAX_VALUE)); // MAX_VALUE for infinity
+    }
+
+    /**
+     * Add an edge made elsewhere to the edge lists of the graph and of both
+     * its nodes.
+     *
+     * @param e     Edge to add
+     */
+    protected void addEdge(Edge e) {
+        edges.add(e);
+        e.leftNode().addEdge(e);
+        e.rightNode().addEdge(e);
+    }
  
+    /**
+     * Change the profit of a previously initialised technology. This may be
+     * done after optimise(), in which case the flow found so far is kept and
+     * the next call of optimise() only has to repair it. Raising the profit
+     * leaves the flow valid, the next optimise() simply augments further.
+     * When the profit drops below the flow already leaving the source for
+     * the technology, the surplus is cancelled along flow carrying paths
+     * from the technology to the sink.
+     *
+     * @param name      Name of the technology
+     * @param profit    New profit of the technology
+     * @throws NullPointerException Thrown when the technology is unknown.
+     */
+    public void setProfit(String name, Integer profit)
+                                                throws NullPointerException {
+        Node n;
+        Edge e;
+
+        n=names.get(name);
+        if (n==null)
+            throw new NullPointerException(
+                    "Attempted to reprice an undefined technology.");
+
+        e=findEdge(source,n);
+        if (e==null) { // connect to source
+            if (profit<=0) return;
+            e=new Edge(source,n,0);
+            edges.add(e);
+            source.addEdge(e);
+            n.addEdge(e);
+        }
+        resize(e,Math.max(profit,0));
+    }
+
+    /**
+     * Change the cost of a previously initialised technology. Like
+     * setProfit() this keeps the flow found by an earlier optimise(); when
+     * the cost drops below the flow already entering the sink from the
+     * technology, the surplus is cancelled along flow carrying paths from
+     * the source to the technology.
+     *
+     * @param name      Name of the technology
+     * @param cost      New cost of the technology
+     * @throws NullPointerException Thrown when the technology is unknown.
+     */
+    public void setCost(String name, Integer cost)
+                                                throws NullPointerException {
+        Node n;
+        Edge e;
+
+        n=names.get(name);
+        if (n==null)
+            throw new NullPointerException(
+                    "Attempted to reprice an undefined technology.");
+
+        e=findEdge(n,sink);
+        if (e==null) { // connect to sink
+            if (cost<=0) return;
+            e=new Edge(n,sink,0);
+            edges.add(e);
+            n.addEdge(e);
+            sink.addEdge(e);
+        }
+        resize(e,Math.max(cost,0));
+    }
+
+    /**
+     * Remove a previously initialised technology together with its profit,
+     * its cost and all dependencies from or to it. This may be done after
+     * optimise(): the flow through the removed edges is cancelled along
+     * flow carrying paths like setProfit() does, and the next optimise()
+     * augments from the flow that is left. The technology can be added
+     * again afterwards.
+     *
+     * @param name      Name of the technology
+     * @throws NullPointerException Thrown when the technology is unknown.
+     */
+    public void removeTechnology(String name) throws NullPointerException {
+        ArrayList<Edge> list; // the edges of the technology
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Node n;
+
+        n=names.remove(name);
+        if (n==null)
+            throw new NullPointerException(
+                    "Attempted to retire an undefined technology.");
+
+        list=new ArrayList<Edge>();
+        eIter=n.getEdges();
+        while(eIter.hasNext()) list.add(eIter.next());
+        for(Edge e : list) {
+            if (!e.isRemoved()) removeEdge(e);
+        }
+        n.remove();
+        dropped++;
+    }
+
+    /**
+     * Remove the dependency of one technology on another. Its flow is
+     * cancelled as described for removeTechnology().
+     *
+     * @param from      Dependant technology
+     * @param to        Required technology
+     * @throws NullPointerException Thrown when either technology is unknown
+     *                              or the first does not depend on the
+     *                              second.
+     */
+    public void removeDependency(String from, String to)
+                                                throws NullPointerException {
+        ArrayList<Edge> list; // the dependency edges, if added repeatedly
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Node f,t;
+        Edge e;
+
+        f=names.get(from);
+        t=names.get(to);
+        if (t==null || f==null)
+            throw new NullPointerException(
+                    "Attempted to disconnect undefined technologies.");
+
+        list=new ArrayList<Edge>();
+        eIter=f.getEdges();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==f && e.rightNode()==t && !e.isRemoved())
+                list.add(e);
+        }
+        if (list.isEmpty())
+            throw new NullPointerException(
+                    "Attempted to remove an undefined dependency.");
+        for(Edge d : list) removeEdge(d);
+    }
+
+    /**
+     * Cancel the flow of an edge and mark it removed. It stays in the edge
+     * list of the graph until compact(), and in those of its nodes until
+     * they compact themselves (see Node.dropEdge()).
+     *
+     * @param e     Edge to remove
+     */
+    protected void removeEdge(Edge e) {
+        resize(e,0);
+        e.remove();
+        e.leftNode().dropEdge();
+        e.rightNode().dropEdge();
+        dropped++;
+    }
+
+    /**
+     * Take the removed nodes and edges out of the lists of the graph and
+     * its nodes, and number the nodes left densely again. Removing only
+     * marks, so that a removal costs no more than cancelling its flow;
+     * every operation over the whole graph compacts first, which costs no
+     * more than the operation itself.
+     */
+    protected void compact() {
+        ArrayDeque<Node> liveNodes; // the nodes kept
+        ArrayDeque<Edge> liveEdges; // the edges kept
+        Iterator<Node> nIter; // general purpose node iterator
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Node n; // general purpose node
+        Edge e; // general purpose edge
+
+        if (dropped==0) return;
+        liveEdges=new ArrayDeque<Edge>(edges.size());
+        eIter=edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (!e.isRemoved()) liveEdges.add(e);
+        }
+        edges=liveEdges;
+
+        liveNodes=new ArrayDeque<Node>(nodes.size());
+        nIter=nodes.iterator();
+        while(nIter.hasNext()) {
+            n=nIter.next();
+            if (n.isRemoved()) continue;
+            n.setIndex(liveNodes.size());
+            n.compact();
+            liveNodes.add(n);
+        }
+        nodes=liveNodes;
+        dropped=0;
+    }
+
+    /**
+     * Find the edge leading from one node to another.
+     *
+     * @param l     Left hand node of the edge
+     * @param r     Right hand node of the edge
+     * @return      The edge, or null if the nodes are not connected
+     */
+    protected Edge findEdge(Node l, Node r) {
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Edge e; // general purpose edge
+
+        eIter=l.getEdges();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==l && e.rightNode()==r) return e;
+        }
+
+        return null;
+    }
+
+    /**
+     * Give an edge a new capacity while keeping the flow of the graph valid.
+     * If the edge carries more flow than the new capacity allows, the
+     * surplus is taken off the edge and cancelled on both sides of it.
+     *
+     * @param e     Edge to resize
+     * @param c     New capacity of the edge
+     */
+    protected void resize(Edge e, Integer c) {
+        Integer surplus; // flow above the new capacity
+
+        surplus=e.getFlow()-c;
+        e.setCapacity(c);
+        if (surplus<=0) return;
+
+        e.augment(-surplus);
+        if (e.leftNode()!=source) cancelFlow(e.leftNode(),surplus,true);
+        if (e.rightNode()!=sink) cancelFlow(e.rightNode(),surplus,false);
+    }
+
+    /**
+     * Cancel an amount of flow that no longer balances at a node. With
+     * toSource set the node receives more than it sends, and the flow is
+     * reduced along paths of flow carrying edges from the source to the
+     * node; otherwise the node sends more than it receives and the flow is
+     * reduced along paths from the node to the sink. The paths are found by
+     * breadth first searches which record themselves into the nodes just
+     * like findPath() does.
+     *
+     * @param start     Node where the flow does not balance
+     * @param amount    Amount of flow to cancel
+     * @param toSource  true to cancel towards the source, false towards the
+     *                  sink
+     */
+    protected void cancelFlow(Node start, Integer amount, boolean toSource) {
+        Iterator<Node> nIter; // general purpose node iterator
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Node target; // node the search is looking for
+        Node u,v; // general purpose nodes
+        Integer a; // flow cancelled along one path
+        Edge e; // general purpose edge
+
+        if (queue==null) queue=new ArrayDeque<Node>(nodes.size());
+        target=(toSource)?(source):(sink);
+        while(amount>0) {
+            nIter=nodes.iterator();
+            while(nIter.hasNext()) nIter.next().reset();
+            start.visit();
+            start.setAugment(amount);
+            queue.clear();
+            queue.addLast(start);
+
+            // Follow flow carrying edges against or with their direction
+            while(!queue.isEmpty() && !target.getVisited()) {
+                u=queue.removeFirst();
+                eIter=u.getEdges();
+                while(eIter.hasNext()) {
+                    e=eIter.next();
+                    if (((toSource)?(e.rightNode()):(e.leftNode()))!=u)
+                        continue;
+                    v=(toSource)?(e.leftNode()):(e.rightNode());
+                    if (v.getVisited() || e.getFlow()==0) continue;
+                    v.setAugment(Math.min(u.getAugment(),e.getFlow()));
+                    v.visit();
+                    v.setPrevious(e);
+                    queue.addLast(v);
+                }
+            }
+            if (!target.getVisited()) break; // flow was not valid to begin
+
+            // Retrace the path and take the flow off it
+            a=target.getAugment();
+            u=target;
+            while(u!=start) {
+                e=u.getPrevious();
+                e.augment(-a);
+                u=(toSource)?(e.rightNode()):(e.leftNode());
+            }
+            amount-=a;
+        }
+    }
+
+    /**
+     * Freeze this graph into a FlowNetwork. The nodes keep their position
+     * in the node list as their number, so the source is node 0 and the
+     * sink node 1, and every edge becomes a pair of forward and reverse
+     * arcs. Dependency edges (capacity Integer.MAX_VALUE) are given the
+     * capacity FlowNetwork.INFINITE. Later changes to this graph are not
+     * reflected in the returned network.
+     *
+     * @return  an array based copy of this graph
+     */
+    public FlowNetwork freeze() {
+        return freeze(false);
+    }
+
+    /**
+     * Freeze this graph into a FlowNetwork like freeze() does, optionally
+     * with the flow the edges carry instead of the zero flow. After a solve
+     * the returned network then holds the residual network the Graph ended
+     * with, which can be analysed further (see Sensitivity).
+     *
+     * @param flow  true to copy the flow of the edges as well
+     * @return      an array based copy of this graph
+     */
+    public FlowNetwork freeze(boolean flow) {
+        Iterator<Node> nIter; // iterator for nodes
+        Iterator<Edge> eIter; // iterator for edges
+        String[] label; // node names by node number
+        int[] from,to; // arc end points
+        long[] capacity; // arc capacities
+        long[] f; // flow through the arcs, null for the zero flow
+        Node n; // general purpose node
+        Edge e; // general purpose edge
+        int i; // general purpose counter
+
+        compact();
+
+        label=new String[nodes.size()];
+        nIter=nodes.iterator();
+        while(nIter.hasNext()) {
+            n=nIter.next();
+            label[n.getIndex()]=n.getName();
+        }
+
+        from=new int[edges.size()];
+        to=new int[edges.size()];
+        capacity=new long[edges.size()];
+        f=(flow)?(new long[edges.size()]):(null);
+        eIter=edges.iterator();
+        for(i=0;eIter.hasNext();i++) {
+            e=eIter.next();
+            from[i]=e.leftNode().getIndex();
+            to[i]=e.rightNode().getIndex();
+            capacity[i]=(e.getCapacity()==Integer.MAX_VALUE)?
+                    (FlowNetwork.INFINITE):(e.getCapacity());
+            if (flow) f[i]=e.getFlow();
+        }
+
+        return new FlowNetwork(label,source.getIndex(),sink.getIndex(),
+                                            edges.size(),from,to,capacity,f);
+    }
+
     /**
      * Reset all nodes of this graph by setting their visited flag to false
      * thus preparing them for a breadth first search. Theoretically this
@@ -178,14 +605,14 @@ public class Graph {
  
         // If the other side is not reached yet AND we have capacity to get
         // there, make it so
-        if (!v.getVisited() && e.getAvailable()>0) {
+        if (!v.getVisited() && e.getAvailable()>=delta) {
             // Set augment to the maximum feasable flow for this path
             v.setAugment(Math.min(u.getAugment(),e.getAvailable()));
             v.visit();
             v.setPrevious(e); // keep track of the path
             if (v==sink) return v.getAugment();
             queue.addLast(v);
-        } // if (!v.getVisited() && e.getAvailable()>0) {
+        } // if (!v.getVisited() && e.getAvailable()>=delta) {
  
         // sink not reached yet
         return 0;
@@ -212,59 +639,217 @@ public class Graph {
  
         // If the other side is not reached yet AND we have flow to push back
         // make it so
-        if (!v.getVisited() && e.getFlow()>0) {
+        if (!v.getVisited() && e.getFlow()>=delta) {
             // Set augment to the maximum feasable flow for this path
             v.setAugment(Math.min(u.getAugment(),e.getFlow()));
             v.visit();
             v.setPrevious(e); // keep track of the path
             if (v==sink) return v.getAugment();
             queue.addLast(v);
-        } // if (!v.getVisited() && e.getFlow()>0)
+        } // if (!v.getVisited() && e.getFlow()>=delta)
  
         // sink not reached yet
         return 0;
     }
     /**
      * Finds an augmenting path in the graph using a breadth first search.
-     * It also records the path into the nodes.
+     * It also records the path into the nodes, and the work done in scanned
+     * and visited.
      *
      * @return The maximum flow for the augmenting path
      */
-    protected Integer findPath() {
-        Iterator<Edge> eIter; // general putpose edge iterator
-        Integer augment; // Keep track of possible augmenting paths
-        Edge e; // general purpose edeg
-        Node u; // genral purpose node 
+    protected Integer findPath() {
+        Iterator<Edge> eIter; // general putpose edge iterator
+        Integer augment; // Keep track of possible augmenting paths
+        Edge e; // general purpose edeg
+        Node u; // genral purpose node 
+        int s,v; // edges scanned and nodes visited
+
+        if (bidirectional) return findPathBidirectional();
  
         // Prepare the graph for traversal
         resetNodes();
         queue.clear();
         queue.addLast(source);
  
-        // Do a breadth first search
-        augment=0; // the loop will return if augment!=0
-        while(!queue.isEmpty()) {
-            u=queue.removeFirst();
-            eIter=u.getEdges();
-            while(eIter.hasNext()) {
-                e=eIter.next();
-                if (e.leftNode()==u) { // outgoing edge of u
-                    augment=flowForward(u,e); // augment flow forward
-                } else { // incoming edge of u
-                    augment=flowBackward(u,e); // augment flow backward
-                } // if (e.left==n)
-                // If we find an augmentable path to the sink, return here
-                if (augment!=0) return augment;
-            }
-        }
- 
-        // No augmentable path found.
-        return 0;
-    }
+        // Do a breadth first search, counting in local variables
+        augment=0; // the loop will return if augment!=0
+        s=0;
+        v=0;
+        while(!queue.isEmpty()) {
+            u=queue.removeFirst();
+            v++;
+            eIter=u.getEdges();
+            while(eIter.hasNext()) {
+                e=eIter.next();
+                s++;
+                if (e.leftNode()==u) { // outgoing edge of u
+                    augment=flowForward(u,e); // augment flow forward
+                } else { // incoming edge of u
+                    augment=flowBackward(u,e); // augment flow backward
+                } // if (e.left==n)
+                // If we find an augmentable path to the sink, return here
+                if (augment!=0) {
+                    scanned=s;
+                    visited=v;
+                    return augment;
+                }
+            }
+        }
+
+        // No augmentable path found.
+        scanned=s;
+        visited=v;
+        return 0;
+    }
  
-    /**
-     * Using the result stored in the nodes by the findPath() procedure, this
-     * updates the found path with the augmenting flow.
+    /**
+     * Take a step of the forward half of a bidirectional search: if the
+     * edge offers residual capacity away from u the node on its other side
+     * is visited, recording the path like flowForward() and flowBackward()
+     * do.
+     *
+     * @param u     Node being expanded, visited already
+     * @param e     Edge of u
+     * @return      The node on the other side if the backward half reached
+     *              it before, which joins the two halves, or null
+     */
+    protected Node stepForward(Node u, Edge e) {
+        Node v; // the other side of the edge
+        Integer c; // residual capacity from u to v
+
+        if (e.leftNode()==u) { // outgoing edge of u
+            v=e.rightNode();
+            c=e.getAvailable();
+        } else { // incoming edge of u, push back
+            v=e.leftNode();
+            c=e.getFlow();
+        }
+        if (v.getVisited() || c<delta) return null;
+        v.setAugment(Math.min(u.getAugment(),c));
+        v.setPrevious(e); // keep track of the path
+        if (v.getReached()) return v;
+        v.visit();
+        queue.addLast(v);
+        return null;
+    }
+
+    /**
+     * Take a step of the backward half of a bidirectional search: if the
+     * edge offers residual capacity towards u the node on its other side
+     * is reached, remembering the edge leading on to the sink.
+     *
+     * @param u     Node being expanded, reached already
+     * @param e     Edge of u
+     * @return      The node on the other side if the forward half visited
+     *              it before, which joins the two halves, or null
+     */
+    protected Node stepBackward(Node u, Edge e) {
+        Node v; // the other side of the edge
+        Integer c; // residual capacity from v to u
+
+        if (e.rightNode()==u) { // incoming edge of u
+            v=e.leftNode();
+            c=e.getAvailable();
+        } else { // outgoing edge of u, push back
+            v=e.rightNode();
+            c=e.getFlow();
+        }
+        if (v.getReached() || c<delta) return null;
+        v.reach();
+        v.setNext(e); // keep track of the way to the sink
+        if (v.getVisited()) return v;
+        backQueue.addLast(v);
+        return null;
+    }
+
+    /**
+     * Join the two halves of a bidirectional search where they met. The
+     * edges of the backward half are recorded as previous edges like the
+     * forward half did, so that augmentPath() can retrace the whole path
+     * from the sink.
+     *
+     * @param m     Node where the halves met, with its augment set by the
+     *              forward half
+     * @return      The maximum flow for the augmenting path
+     */
+    protected Integer join(Node m) {
+        Integer augment; // maximum flow of the path so far
+        Edge e; // general purpose edge
+        Node v; // next node on the way to the sink
+
+        augment=m.getAugment();
+        while(m!=sink) {
+            e=m.getNext();
+            if (e.leftNode()==m) { // outgoing edge of m
+                v=e.rightNode();
+                augment=Math.min(augment,e.getAvailable());
+            } else { // incoming edge of m, push back
+                v=e.leftNode();
+                augment=Math.min(augment,e.getFlow());
+            }
+            v.setPrevious(e);
+            m=v;
+        }
+        return augment;
+    }
+
+    /**
+     * Finds an augmenting path like findPath() does, but searching from the
+     * source and the sink at the same time (see setBidirectional()). The
+     * search only fails once the forward half is exhausted, so that just
+     * like after findPath() exactly the nodes still connected to the source
+     * are marked visited.
+     *
+     * @return The maximum flow for the augmenting path, 0 if there is none
+     */
+    protected Integer findPathBidirectional() {
+        Iterator<Edge> eIter; // general purpose edge iterator
+        boolean forward; // expanding the forward half
+        Node u,m; // node expanded and node where the halves meet
+        int s,v; // edges scanned and nodes visited
+
+        // Prepare the graph for traversal from both ends
+        if (backQueue==null) backQueue=new ArrayDeque<Node>(nodes.size());
+        resetNodes();
+        sink.reach();
+        queue.clear();
+        queue.addLast(source);
+        backQueue.clear();
+        backQueue.addLast(sink);
+
+        // Expand the smaller frontier until the halves meet. Once the
+        // backward half is exhausted the forward half goes on alone; when
+        // the forward half is exhausted there is no path and it visited
+        // every node still connected to the source.
+        s=0;
+        v=0;
+        while(!queue.isEmpty()) {
+            forward=(backQueue.isEmpty() || queue.size()<=backQueue.size());
+            u=(forward)?(queue.removeFirst()):(backQueue.removeFirst());
+            v++;
+            eIter=u.getEdges();
+            while(eIter.hasNext()) {
+                s++;
+                m=(forward)?(stepForward(u,eIter.next())):
+                                            (stepBackward(u,eIter.next()));
+                if (m!=null) {
+                    scanned=s;
+                    visited=v;
+                    return join(m);
+                }
+            }
+        }
+
+        // No augmentable path found.
+        scanned=s;
+        visited=v;
+        return 0;
+    }
+
+    /**
+     * Using the result stored in the nodes by the findPath() procedure, this
+     * updates the found path with the augmenting flow.
      *
      * @param augmentation  the size of the augmenting flow.
      */
@@ -289,11 +874,15 @@ public class Graph {
     /**
      * Using the results stored in the node by the procedure findPath() this
      * procedure calculates the revenue belonging to the minimal cut.
+     * Both sums are kept in a long, so that profits adding up beyond the
+     * range of an int give the revenue the FlowNetwork engines give.
+     *
+     * @return the revenue belonging to the minimal cut
      */
-    protected void printRevenue() {
+    protected long getRevenue() {
         Iterator<Edge> eIter; // Edge iterator
-        Integer c; // capaicty of minmal cut
-        Integer p; // sum of all profits
+        long c; // capaicty of minmal cut
+        long p; // sum of all profits
         Edge e; // general purpose edge
  
         // Calculate the capacity of the minimal cut
@@ -315,46 +904,414 @@ public class Graph {
             p=p+e.getCapacity();
         }
  
-        System.out.print(p-c); // Print the result
+        return p-c;
     }
+
+    /**
+     * Print the revenue belonging to the minimal cut marked by the last
+     * findPath().
+     */
+    protected void printRevenue() {
+        System.out.print(getRevenue()); // Print the result
+    }
  
     /**
      * Using the results stored into the nodes by the findPath procedure this
      * procedure prints the names of all nodes which are part of the minimal
      * cut with exception of the source node name.
      */
-    protected void printChosen() {
-        Iterator<Node> nIter; // iterator for nodes
-        Node n; // general purpose node
- 
-        nIter=nodes.iterator();
-        while(nIter.hasNext()) {
-            n=nIter.next();
-            if (n.getVisited() && n!=source) // is node techn. in minimal cut?
-                System.out.print(" "+n.getName()); // Print name with lead space
-        }
-    }
+    protected void printChosen() {
+        Iterator<Node> nIter; // iterator for nodes
+        StringBuilder out; // collected output
+        Node n; // general purpose node
+
+        out=new StringBuilder();
+        nIter=nodes.iterator();
+        while(nIter.hasNext()) {
+            n=nIter.next();
+            if (n.getVisited() && n!=source) // is node techn. in minimal cut?
+                out.append(' ').append(n.getName()); // name with lead space
+        }
+        System.out.print(out); // a single print for all names
+    }
+
+    /**
+     * Collect the result marked by the last findPath(): the revenue and the
+     * nodes in the minimal cut with exception of the source node, in the
+     * order printChosen() prints them.
+     *
+     * @param nanos Time spent solving in nanoseconds
+     * @return      The result of the last optimisation
+     */
+    protected SelectionResult getResult(long nanos) {
+        Iterator<Node> nIter; // iterator for nodes
+        Iterator<Edge> eIter; // iterator for the edges of the source
+        int[] ids; // node numbers of the chosen nodes
+        String[] label; // their names
+        long flow; // flow leaving the source
+        Node n; // general purpose node
+        int k; // general purpose counter
+
+        k=0;
+        nIter=nodes.iterator();
+        while(nIter.hasNext()) {
+            n=nIter.next();
+            if (n.getVisited() && n!=source) k++;
+        }
+        ids=new int[k];
+        label=new String[k];
+        k=0;
+        nIter=nodes.iterator();
+        while(nIter.hasNext()) {
+            n=nIter.next();
+            if (!n.getVisited() || n==source) continue;
+            ids[k]=n.getIndex();
+            label[k++]=n.getName();
+        }
+
+        flow=0;
+        eIter=source.getEdges();
+        while(eIter.hasNext()) flow+=eIter.next().getFlow();
+
+        return new SelectionResult(getRevenue(),ids,label,flow,nodes.size(),
+                                            2*edges.size(),nanos);
+    }
  
     /**
      * Apply a Ford-Fulkerson algorithm to this graph an print the resulting
      * maximum revenue and names of the nodes in the minimal cut.
      */
     public void optimise() {
-        Integer augmentation; // value of possible augmentation
- 
-        // Provide a fifo queue with appropriate size
-        queue=new ArrayDeque<Node>(nodes.size());
- 
-        // Augment path untill no augmentations can be made anymore
-        while((augmentation=findPath())!=0){
-            augmentPath(augmentation);
-        }
- 
+        optimise(false);
+    }
+
+    /**
+     * Apply a Ford-Fulkerson algorithm to this graph an print the resulting
+     * maximum revenue and names of the nodes in the minimal cut. In capacity
+     * scaling mode only edges with a residual capacity of at least delta are
+     * used, starting with the largest power of two not above the largest
+     * finite capacity and halving delta whenever no such path is left. This
+     * augments along wide paths first and bounds the number of augmentations
+     * by O(E log U) instead of by the capacities themselves. The last round
+     * uses delta 1, so the final search marks the same minimal cut.
+     *
+     * @param scaling   true to use capacity scaling
+     */
+    public void optimise(boolean scaling) {
+        maximiseFlow(scaling);
+
         // Process the results; only those nodes have been visited in the last
         // findPath() which are still connected to the source. They form per
         // definition the minimal cut.
         printRevenue();
         printChosen();
         System.out.println(""); // end with a newline
-    }
+    }
+
+    /**
+     * Maximise the flow like optimise(boolean) does, but return the result
+     * instead of printing it.
+     *
+     * @param scaling   true to use capacity scaling
+     * @return          The maximum revenue and the chosen technologies
+     */
+    public SelectionResult solve(boolean scaling) {
+        long start; // time the solve started
+
+        start=System.nanoTime();
+        maximiseFlow(scaling);
+        return getResult(System.nanoTime()-start);
+    }
+
+    /**
+     * Augment the flow of this graph until it is maximal without printing
+     * anything, with or without capacity scaling as described for
+     * optimise(boolean). Afterwards the nodes still connected to the source
+     * are marked visited.
+     * <P>
+     * The progress is counted in stats, which are opened here unless the
+     * caller did so already (see SolverStats). The counts of a search and
+     * the time between two calls of System.nanoTime() are added to them
+     * once per search and once per augmentation, never per edge.
+     *
+     * @param scaling   true to use capacity scaling
+     */
+    protected void maximiseFlow(boolean scaling) {
+        Iterator<Edge> eIter; // Edge iterator
+        Integer augmentation; // value of possible augmentation
+        int c; // largest finite capacity
+        Edge e; // general purpose edge
+        boolean own; // the stats are opened here
+        long profit,t,u; // profit upper bound and times
+
+        compact();
+
+        // Provide a fifo queue with appropriate size
+        queue=new ArrayDeque<Node>(nodes.size());
+
+        // Find the starting threshold
+        delta=1;
+        if (scaling) {
+            c=1;
+            eIter=edges.iterator();
+            while(eIter.hasNext()) {
+                e=eIter.next();
+                if (e.getCapacity()!=Integer.MAX_VALUE && e.getCapacity()>c)
+                    c=e.getCapacity();
+            }
+            delta=Integer.highestOneBit(c);
+        }
+
+        own=(stats==null);
+        if (own) stats=SolverStats.get().open();
+        try {
+            // No flow can exceed the capacity leaving the source
+            profit=0;
+            eIter=source.getEdges();
+            while(eIter.hasNext()) {
+                e=eIter.next();
+                if (e.leftNode()==source) profit+=e.getCapacity();
+            }
+            stats.bound(profit);
+
+            // Augment path untill no augmentations can be made anymore
+            t=System.nanoTime();
+            while(true) {
+                while((augmentation=findPath())!=0){
+                    u=System.nanoTime();
+                    stats.search(scanned,visited,u-t);
+                    augmentPath(augmentation);
+                    t=System.nanoTime();
+                    stats.augment(augmentation,t-u);
+                }
+                u=System.nanoTime();
+                stats.search(scanned,visited,u-t);
+                t=u;
+                if (delta==1) break;
+                delta=delta/2;
+            }
+        } finally {
+            if (own) {
+                SolverStats.get().close(stats);
+                stats=null;
+            }
+        }
+    }
+
+    /**
+     * Find the root of the set containing a node, halving the path to it on
+     * the way.
+     *
+     * @param parent    Parent of every node, roots are their own parent
+     * @param i         Number of the node
+     * @return          Number of the root
+     */
+    protected static int findRoot(int[] parent, int i) {
+        while(parent[i]!=i) {
+            parent[i]=parent[parent[i]];
+            i=parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Split the technologies into the weakly connected components of the
+     * dependency relation, ignoring the source and the sink which all of
+     * them share. Every edge goes with the component of its technologies.
+     * Components without any edge can not carry flow and are left out.
+     *
+     * @param parts     Receives the edges of every component
+     */
+    protected void components(ArrayList<ArrayList<Edge>> parts) {
+        Iterator<Edge> eIter; // general purpose edge iterator
+        int[] parent; // union-find forest over the node numbers
+        int[] slot; // position in parts of the component of each root
+        Node l,r; // end points of an edge
+        Edge e; // general purpose edge
+        int a,b; // roots
+
+        compact();
+        parent=new int[nodes.size()];
+        for(a=0;a<parent.length;a++) parent[a]=a;
+        eIter=edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            l=e.leftNode();
+            r=e.rightNode();
+            if (l==source || r==sink) continue; // not a dependency
+            a=findRoot(parent,l.getIndex());
+            b=findRoot(parent,r.getIndex());
+            if (a!=b) parent[a]=b;
+        }
+
+        slot=new int[nodes.size()];
+        Arrays.fill(slot,-1);
+        eIter=edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            l=(e.leftNode()==source)?(e.rightNode()):(e.leftNode());
+            a=findRoot(parent,l.getIndex());
+            if (slot[a]<0) {
+                slot[a]=parts.size();
+                parts.add(new ArrayList<Edge>());
+            }
+            parts.get(slot[a]).add(e);
+        }
+    }
+
+    /**
+     * Maximise the flow through the edges of one component in a separate
+     * graph holding copies of only its own nodes and edges, starting from
+     * the flow the edges already carry, and copy the flow found back. Since
+     * no node or edge of this graph is touched apart from the edges of the
+     * component, components can be solved on different threads at once.
+     *
+     * @param part      Edges of the component
+     * @param scaling   true to use capacity scaling
+     * @param counters  Counters of the calling thread
+     */
+    protected void solveComponent(ArrayList<Edge> part, boolean scaling,
+                                            SolverStats.Counters counters) {
+        HashMap<Node,Node> copy; // node of the separate graph per node
+        Edge[] twin; // edge of the separate graph per edge
+        Graph G; // the separate graph
+        Node l,r; // end points of an edge
+        Edge e; // general purpose edge
+        int i; // general purpose counter
+
+        G=new Graph();
+        copy=new HashMap<Node,Node>();
+        copy.put(source,G.source);
+        copy.put(sink,G.sink);
+        twin=new Edge[part.size()];
+        for(i=0;i<part.size();i++) {
+            e=part.get(i);
+            l=copy.get(e.leftNode());
+            if (l==null) {
+                l=new Node(e.leftNode().getName());
+                l.setIndex(G.nodes.size());
+                G.nodes.add(l);
+                copy.put(e.leftNode(),l);
+            }
+            r=copy.get(e.rightNode());
+            if (r==null) {
+                r=new Node(e.rightNode().getName());
+                r.setIndex(G.nodes.size());
+                G.nodes.add(r);
+                copy.put(e.rightNode(),r);
+            }
+            twin[i]=new Edge(l,r,e.getCapacity());
+            twin[i].augment(e.getFlow());
+            G.edges.add(twin[i]);
+            l.addEdge(twin[i]);
+            r.addEdge(twin[i]);
+        }
+
+        G.stats=counters;
+        G.bidirectional=bidirectional;
+        G.maximiseFlow(scaling);
+        for(i=0;i<part.size();i++) {
+            e=part.get(i);
+            e.augment(twin[i].getFlow()-e.getFlow());
+        }
+    }
+
+    /**
+     * Apply the Ford-Fulkerson algorithm to every weakly connected component
+     * of the dependency relation separately and print the resulting maximum
+     * revenue and names of the nodes in the minimal cut (see
+     * solve(boolean,int)).
+     *
+     * @param scaling   true to use capacity scaling within the components
+     * @param threads   Number of threads solving components
+     * @throws IllegalArgumentException Thrown when threads is less than 1.
+     */
+    public void optimise(boolean scaling, int threads)
+                                            throws IllegalArgumentException {
+        solve(scaling,threads);
+        printRevenue();
+        printChosen();
+        System.out.println(""); // end with a newline
+    }
+
+    /**
+     * Apply the Ford-Fulkerson algorithm to every weakly connected component
+     * of the dependency relation separately and return the resulting
+     * maximum revenue and the nodes in the minimal cut. Technologies of
+     * different components only share the source and the sink, so every
+     * component can be solved in a small graph of its own, where the breadth
+     * first searches do not have to pass the nodes of all other components.
+     * The components are handed out to the given number of threads, largest
+     * first. Together their flows form a maximum flow of this graph, and a
+     * single search over it marks the same minimal cut as optimise() would,
+     * so the result is identical.
+     *
+     * @param scaling   true to use capacity scaling within the components
+     * @param threads   Number of threads solving components
+     * @return          The maximum revenue and the chosen technologies
+     * @throws IllegalArgumentException Thrown when threads is less than 1.
+     */
+    public SelectionResult solve(boolean scaling, int threads)
+                                            throws IllegalArgumentException {
+        final ArrayList<ArrayList<Edge>> parts; // edges of every component
+        final AtomicInteger next; // next component to hand out
+        final boolean scale; // scaling, for use in the threads
+        ArrayList<Callable<Object>> calls; // one call per thread
+        ExecutorService pool; // the threads
+        int i; // general purpose counter
+        long start; // time the solve started
+
+        start=System.nanoTime();
+        if (threads<1)
+            throw new IllegalArgumentException(
+                    "Attempted to use less than one thread.");
+
+        parts=new ArrayList<ArrayList<Edge>>();
+        components(parts);
+        Collections.sort(parts,new Comparator<ArrayList<Edge>>() {
+            public int compare(ArrayList<Edge> a, ArrayList<Edge> b) {
+                return b.size()-a.size(); // largest first
+            }
+        });
+
+        next=new AtomicInteger();
+        scale=scaling;
+        calls=new ArrayList<Callable<Object>>();
+        for(i=0;i<threads;i++) {
+            calls.add(new Callable<Object>() {
+                public Object call() {
+                    SolverStats.Counters c; // counters of this thread
+                    int k; // component being solved
+
+                    c=SolverStats.get().open();
+                    try {
+                        while((k=next.getAndIncrement())<parts.size())
+                            solveComponent(parts.get(k),scale,c);
+                    } finally {
+                        SolverStats.get().close(c);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        pool=Executors.newFixedThreadPool(threads);
+        try {
+            for(Future<Object> f : pool.invokeAll(calls)) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solving failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        // The flow is maximal already, this search only marks the cut
+        queue=new ArrayDeque<Node>(nodes.size());
+        delta=1;
+        findPath();
+
+        return getResult(System.nanoTime()-start);
+    }
 }
\ No newline at end of file
@@ -36,84 +36,83 @@ import java.io.*;
  * '->'. The application constructs a graph from this data to which a Ford-
  * Fulkerson algorithm is applied. The result of this algorithm (maximum
  * net revenue and selected technologies to reach that revenue) is then
- * printed to the screen.
+ * printed to the screen. Instead of the object based Ford-Fulkerson
+ * algorithm of the Graph, the graph can be frozen into arrays and solved by
+ * a different FlowEngine by giving "-engine name" before the file name.
+ * The option "-scaling" makes the Graph augment along paths of large
+ * capacity first, which pays off when profits and costs span a wide range.
+ * With "-bidirectional" the Graph searches every augmenting path from the
+ * source and the sink at once (see Graph.setBidirectional()).
+ * The engine "parallel" runs on as many threads as there are processors
+ * unless "-threads count" says otherwise. With more than one thread the
+ * engine "dinic" builds its levels, and every engine but the graph finds
+ * the minimal cut, with a ParallelSearch on those threads as well, which
+ * pays off on networks with tens of millions of arcs. The option
+ * "-components" makes the Graph solve every group of technologies linked
+ * by dependencies on its own, spread over the same number of threads,
+ * which also read the dependencies of large uncompressed files (see
+ * ConfigReader). With "-presolve" every group of technologies depending
+ * on each other in a cycle is condensed into one and technologies that
+ * can be decided without solving are fixed before solving; what was
+ * removed is reported on System.err (see Presolver).
+ * With "-parametric" the costs are multiplied by a factor lambda and every
+ * value of lambda at which the chosen set changes is printed instead (see
+ * ParametricSolver). With "-sensitivity" the solution is followed by the
+ * range of profit and cost over which the decision on every technology
+ * stays the same, read from the residual network the solve ends with
+ * (see Sensitivity); this analysis takes from a few to over a thousand
+ * times as long as the solve. The option "-save name" writes the graph to
+ * a binary snapshot instead of solving it (see Snapshot). A snapshot given
+ * instead of a configuration file is loaded without parsing and solved by
+ * engine pushrelabel-cut unless another FlowEngine is selected. With
+ * "-format name" the solution is printed as names one per line, as JSON or
+ * in binary instead of as text (see ResultWriter); only the text starts
+ * with the "#version 1" line.
+ * With "-monitor" the progress of the Graph while it solves can be
+ * followed with a JMX client such as JConsole through the MBean
+ * SolverStats.NAME (see SolverStats).
  *
  * author  Michiel Meijer <m.meijer@cinis.com>
  * @version 2011.0327
  * @since   1.6
  */
 public class Main {
+    /**
+     * The engine names accepted by the -engine option.
+     */
+    protected static final String ENGINES=
+            "graph csr dinic pushrelabel pushrelabel-cut pseudoflow parallel";
  
     /**
      * Open a named source file and use its contents to create a graph.
      * The initialisation routine is protected against the most common errors
      * that can occur and will report the errors to System.err before exiting
      * with a non zero code.
+     * The file is read by Optimiser.read(), which also accepts gzip
+     * compressed files and "-" for the standard input.
      *
      * @param G     Graph object to be initialised
      * @param src   Name of source configuration file
      */
     protected static void initialise(Graph G,String src) {
-        Integer techCount; // Number of technologies to read
-        Integer depCount; // Number of dependencies to read
-        Integer cost,profit; // Cost and profit
-        Integer i; // General purpose iterator
-        String firstTech,lastTech; // name of technologies
-        String s; // general purpose string
-        Scanner scan; // Input scanner
- 
-        try{
-            scan=new Scanner(new File(src));
- 
-            // First two entirs are count the number of following lines
-            techCount=scan.nextInt();
-            depCount=scan.nextInt();
- 
-            // First section defines available technologies
-            for(i=0;i<techCount;i++) {
-                firstTech=scan.next();
-                cost=scan.nextInt();
-                profit=scan.nextInt();
- 
-                G.addTechnology(firstTech,profit,cost);
-            }
- 
-            // Second section links depending technologies
-            for(i=0;i<depCount;i++) {
-                firstTech=scan.next();
-                s=scan.next(); // this should be a "->" as per specification
-                lastTech=scan.next();
- 
-                if (!s.equals("->")) // check specifications!
-                    throw new InputMismatchException(
-                            "Expected a separtor of form '->' not foud");
- 
-                G.addDependency(firstTech, lastTech);
-            }
- 
-            scan.close();
-        } catch (InputMismatchException e) {
-            System.err.println("Configuratuon file '"+src+"' is malformed:");
-            System.err.println(e.toString());
-            System.exit(1);
-        } catch (IllegalArgumentException e) {
-            System.err.println("Configuration file '"+src+"' is inconsistent:");
-            System.err.println(e.toString());
-            System.exit(1);
-        } catch (FileNotFoundException e) {
-            System.err.println("Configuration file '"+src+"' was not found:");
-            System.err.println(e.toString());
-            System.exit(1);
-        } catch (NoSuchElementException e) {
-            System.err.println("Configuration file '"+
-                                                    src+"' ended prematurely:");
-            System.err.println(e.toString());
-            System.exit(1);
-        } catch (NullPointerException e) {
-            System.err.println("Configuration file '"+
-                                    src+"' causes access to undefined data:");
-            System.err.println(e.toString());
-            System.exit(1);
+        initialise(G,src,1);
+    }
+
+    /**
+     * Open a named source file like initialise(G,src), reading the
+     * dependencies of a large uncompressed file on several threads.
+     *
+     * @param G         Graph object to be initialised
+     * @param src       Name of source configuration file
+     * @param threads   Number of threads reading the dependencies
+     */
+    protected static void initialise(Graph G,String src,int threads) {
+        try{
+            Optimiser.read(G,src,threads);
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage()+":");
+            System.err.println(e.getCause().toString());
+            System.exit(1);
         } catch (OutOfMemoryError e) {
             System.err.println(
                     "Out of memory reading configuration file '"+src+"'");
@@ -121,27 +120,308 @@ public class Main {
             System.exit(1);
         }
     }
+
+    /**
+     * Load a network from a snapshot written with the -save option. Errors
+     * are reported like those of initialise() before exiting with a non zero
+     * code.
+     *
+     * @param src   Name of the snapshot file
+     * @return      The network stored in the snapshot
+     */
+    protected static FlowNetwork load(String src) {
+        FlowNetwork net; // the network loaded
+
+        net=null;
+        try {
+            net=Optimiser.load(src);
+        } catch (ConfigurationException e) {
+            System.err.println(e.getMessage()+":");
+            System.err.println(e.getCause().toString());
+            System.exit(1);
+        } catch (OutOfMemoryError e) {
+            System.err.println("Out of memory reading snapshot file '"+src+"'");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+        return net;
+    }
+
+    /**
+     * Write a network to a snapshot file, reporting a failure to System.err
+     * before exiting with a non zero code.
+     *
+     * @param net   Network to store
+     * @param dst   Name of the snapshot file
+     */
+    protected static void store(FlowNetwork net, String dst) {
+        try {
+            Snapshot.write(net,dst);
+        } catch (IOException e) {
+            System.err.println("Snapshot file '"+dst+"' could not be written:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+    }
  
-    /**
-     * Main entry point into the application. It executes the initialisation
-     * and then calls the Graph created to calculate and print optimal values.
-     * If all goes well it then exits with a code 0.
-     *
-     * @param args the command line arguments, the first of which should be a
-     *              configuration file to read.
-     */
-    public static void main(String[] args) {
-        String s;
-        Graph G;
- 
-        s=(args.length>0)?(args[0]):("test.txt"); // Always provide valid string
-        G=new Graph();
- 
-        initialise(G,s); // Construct the graph
-        System.out.println("#version 1"); // required output
-        G.optimise(); // Calculate and print optimal solution
- 
-        System.exit(0);
-    }
+    /**
+     * Print a solution to System.out in the given format (see ResultWriter),
+     * reporting a failure to System.err before exiting with a non zero code.
+     *
+     * @param r         Solution to print
+     * @param format    Output format
+     */
+    protected static void print(SelectionResult r, int format) {
+        ResultWriter writer; // buffered output
+
+        try {
+            writer=new ResultWriter(System.out,format);
+            writer.write(r);
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("The solution could not be written:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Translate the name given with the -engine option into the maximum flow
+     * algorithm to run on the frozen graph. The name "graph" selects the
+     * Ford-Fulkerson algorithm of the Graph itself, for which null is
+     * returned.
+     *
+     * @param name  Name of the engine as given on the command line
+     * @return      The engine to use, or null to use Graph.optimise()
+     * @throws IllegalArgumentException Thrown when the name is unknown.
+     */
+    protected static FlowEngine selectEngine(String name)
+                                            throws IllegalArgumentException {
+        return selectEngine(name,Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Translate an engine name into an engine like selectEngine(name),
+     * giving the parallel engine the number of threads to use. With more
+     * than one thread the dinic engine builds its levels on them too.
+     *
+     * @param name      Name of the engine as given on the command line
+     * @param threads   Number of threads for the parallel engine
+     * @return          The engine to use, or null to use Graph.optimise()
+     * @throws IllegalArgumentException Thrown when the name is unknown or
+     *                                  the thread count is not positive.
+     */
+    protected static FlowEngine selectEngine(String name, int threads)
+                                            throws IllegalArgumentException {
+        if (name.equals("graph")) return null;
+        if (name.equals("csr")) return new AugmentingPathEngine();
+        if (name.equals("dinic"))
+            return (threads>1)?(new DinicEngine(threads)):(new DinicEngine());
+        if (name.equals("pushrelabel")) return new PushRelabelEngine();
+        if (name.equals("pushrelabel-cut")) return new PushRelabelEngine(true);
+        if (name.equals("pseudoflow")) return new PseudoflowEngine();
+        if (name.equals("parallel"))
+            return new ParallelPushRelabelEngine(threads);
+
+        throw new IllegalArgumentException(
+                "Unknown engine '"+name+"', expected one of: "+ENGINES);
+    }
+
+    /**
+     * Produces the Optimiser solving a network with the given engine,
+     * finding the minimal cut with a ParallelSearch when there is more than
+     * one thread.
+     *
+     * @param engine    Maximum flow algorithm to solve with
+     * @param threads   Number of threads searching the cut
+     * @return          The Optimiser to use
+     */
+    protected static Optimiser optimiser(FlowEngine engine, int threads) {
+        if (threads>1) return new Optimiser(engine,threads);
+        return new Optimiser(engine);
+    }
+
+    /**
+     * Main entry point into the application. It executes the initialisation
+     * and then calls the Graph created to calculate and print optimal values.
+     * If all goes well it then exits with a code 0.
+     *
+     * @param args the command line arguments: optionally "-engine name" to
+     *              select a different maximum flow algorithm (see
+     *              selectEngine), "-components" to solve the components
+     *              of the graph separately, "-threads count" for the
+     *              parallel engine, the parallel searches, the
+     *              components and reading the file, "-scaling" to
+     *              let the graph use capacity scaling,
+     *              "-bidirectional" to let it search paths from both
+     *              ends, "-presolve" to condense dependency
+     *              cycles first, "-parametric" to analyse all cost
+     *              multipliers at once, "-sensitivity" to add the
+     *              stable ranges of profit and cost, "-monitor" to
+     *              publish the progress of the graph through JMX,
+     *              "-format name" to
+     *              choose the output format or "-save name" to write a
+     *              snapshot, followed by a configuration file or
+     *              snapshot to read.
+     */
+    public static void main(String[] args) {
+        String s;
+        String name; // name of the engine
+        FlowEngine engine; // alternative engine, null to use the graph
+        boolean scaling; // use capacity scaling in the graph
+        boolean bidirectional; // search from both ends in the graph
+        boolean parametric; // analyse all cost multipliers
+        boolean sensitivity; // analyse the ranges of profit and cost
+        boolean monitor; // publish the progress through JMX
+        boolean split; // solve the components of the graph separately
+        boolean presolve; // condense dependency cycles first
+        int threads; // threads for the parallel engine
+        ParametricSolver solver; // solver for the parametric analysis
+        Sensitivity ranges; // analysis of the solution found
+        Presolver presolver; // reduces the graph before solving
+        boolean snapshot; // the file is a snapshot instead of text
+        String save; // name of the snapshot to write, null to solve
+        FlowNetwork net; // the network of a snapshot
+        int format; // output format, see ResultWriter
+        SelectionResult result; // the solution to print
+        Graph G;
+        int i; // argument iterator
+
+        s="test.txt"; // Always provide valid string
+        name="graph";
+        engine=null;
+        threads=Runtime.getRuntime().availableProcessors();
+        scaling=false;
+        bidirectional=false;
+        parametric=false;
+        sensitivity=false;
+        monitor=false;
+        split=false;
+        presolve=false;
+        snapshot=false;
+        save=null;
+        format=ResultWriter.TEXT;
+        try {
+            for(i=0;i<args.length;i++) {
+                if (args[i].equals("-engine") && i+1<args.length)
+                    name=args[++i];
+                else if (args[i].equals("-threads") && i+1<args.length)
+                    threads=Integer.parseInt(args[++i]);
+                else if (args[i].equals("-scaling"))
+                    scaling=true;
+                else if (args[i].equals("-bidirectional"))
+                    bidirectional=true;
+                else if (args[i].equals("-parametric"))
+                    parametric=true;
+                else if (args[i].equals("-sensitivity"))
+                    sensitivity=true;
+                else if (args[i].equals("-monitor"))
+                    monitor=true;
+                else if (args[i].equals("-components"))
+                    split=true;
+                else if (args[i].equals("-presolve"))
+                    presolve=true;
+                else if (args[i].equals("-save") && i+1<args.length)
+                    save=args[++i];
+                else if (args[i].equals("-format") && i+1<args.length)
+                    format=ResultWriter.format(args[++i]);
+                else
+                    s=args[i];
+            }
+            if (threads<1)
+                throw new IllegalArgumentException(
+                        "Attempted to use less than one thread.");
+            engine=selectEngine(name,threads);
+            if (scaling && engine!=null)
+                throw new IllegalArgumentException(
+                        "Capacity scaling is only available for engine graph");
+            if (scaling && parametric)
+                throw new IllegalArgumentException(
+                        "Capacity scaling can not be combined with -parametric");
+            if (bidirectional && (engine!=null || parametric))
+                throw new IllegalArgumentException(
+                        "Bidirectional search is only available for "+
+                        "engine graph");
+            if (split && (engine!=null || parametric))
+                throw new IllegalArgumentException(
+                        "Components can only be solved by engine graph");
+            if (presolve && (split || parametric))
+                throw new IllegalArgumentException(
+                        "Presolving can not be combined with "+
+                        "-components or -parametric");
+            if (parametric && format!=ResultWriter.TEXT)
+                throw new IllegalArgumentException(
+                        "The parametric analysis is only printed as text");
+            if (sensitivity && (parametric || presolve))
+                throw new IllegalArgumentException(
+                        "The sensitivity analysis can not be combined with "+
+                        "-parametric or -presolve");
+            if (sensitivity && format!=ResultWriter.TEXT)
+                throw new IllegalArgumentException(
+                        "The sensitivity analysis is only printed as text");
+            snapshot=Snapshot.isSnapshot(s);
+            if (snapshot && (scaling || bidirectional || split || presolve))
+                throw new IllegalArgumentException(
+                        "A snapshot can only be solved by a FlowEngine "+
+                        "or with -parametric");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid command line:");
+            System.err.println(e.toString());
+            System.exit(1);
+        }
+        if (monitor) SolverStats.publish();
+
+        if (snapshot) {
+            G=null;
+            net=load(s); // No parsing needed
+            if (engine==null) engine=new PushRelabelEngine(true);
+        } else {
+            G=new Graph();
+            initialise(G,s,threads); // Construct the graph
+            G.setBidirectional(bidirectional);
+            net=null;
+        }
+        if (save!=null) {
+            store((net==null)?(G.freeze()):(net),save);
+            System.exit(0);
+        }
+
+        if (format==ResultWriter.TEXT)
+            System.out.println("#version 1"); // required output
+        if (parametric) {
+            if (engine==null) engine=new PushRelabelEngine(true);
+            if (net==null) net=G.freeze();
+            solver=new ParametricSolver(net,engine);
+            solver.solve();
+            solver.print();
+            System.exit(0);
+        }
+
+        if (net!=null) {
+            result=optimiser(engine,threads).solve(net);
+        } else if (presolve) {
+            presolver=new Presolver(G);
+            presolver.presolve();
+            presolver.printReport(System.err);
+            result=presolver.solve(engine,scaling);
+        } else if (split)
+            result=G.solve(scaling,threads);
+        else if (engine==null)
+            result=G.solve(scaling); // Calculate optimal solution
+        else {
+            net=G.freeze();
+            result=optimiser(engine,threads).solve(net);
+        }
+        print(result,format);
+
+        if (sensitivity) {
+            if (net==null) net=G.freeze(true); // the flow of the graph
+            ranges=new Sensitivity(net);
+            ranges.analyse();
+            ranges.print();
+        }
+
+        System.exit(0);
+    }
  
 }
\ No newline at end of file
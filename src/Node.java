@@ -35,7 +35,30 @@ public class Node {
      * Indicator flag that this node has already been processed by a breadth
      * first search and should not be processed again.
      */
-    protected boolean visited;
+    protected boolean visited;
+    /**
+     * The edge leading to the next node on the way to the sink, set by the
+     * backward half of a bidirectional search.
+     */
+    protected Edge next;
+    /**
+     * Indicator flag that the backward half of a bidirectional search has
+     * found a way from this node to the sink.
+     */
+    protected boolean reached;
+    /**
+     * Position of this node in the node list of the graph it belongs to. It
+     * is used to number the nodes densely when the graph is frozen.
+     */
+    protected int index;
+    /**
+     * Indicator flag that this node was removed from its graph.
+     */
+    protected boolean removed;
+    /**
+     * Number of removed edges still in the edge list of this node.
+     */
+    protected int dropped;
  
     /**
      * Constructor for the class node. Sets all class variables to sensible
@@ -49,6 +72,11 @@ public class Node {
         edges=new ArrayDeque<Edge>();
         previous=null;
         visited=false;
+        next=null;
+        reached=false;
+        index=0;
+        removed=false;
+        dropped=0;
     }
  
     /**
@@ -76,6 +104,22 @@ public class Node {
     }
  
     /**
+     * Produces the position of this node in the node list of its graph
+     * @return the position of this node
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Set the position of this node in the node list of its graph
+     * @param i the new position of this node
+     */
+    public void setIndex(int i) {
+        index=i;
+    }
+
+    /**
      * Requests an iterator for all edges connected to this node
      * @return  iterator over all edges connected to this node
      */
@@ -122,10 +166,87 @@ public class Node {
         visited=true;
     }
  
-    /**
-     * Set the visited flag to false
-     */
-    public void reset() {
-        visited=false;
-    }
+    /**
+     * Queries the value of the class variable next
+     * @return the value of the class variable next
+     */
+    public Edge getNext() {
+        return next;
+    }
+
+    /**
+     * Set the value of the class variable next
+     * @param e the value the class variable next is set to
+     */
+    public void setNext(Edge e) {
+        next=e;
+    }
+
+    /**
+     * Query the flag reached
+     * @return the value of the flag reached
+     */
+    public boolean getReached() {
+        return reached;
+    }
+
+    /**
+     * Set the reached flag to true
+     */
+    public void reach() {
+        reached=true;
+    }
+
+    /**
+     * Set the visited and reached flags to false
+     */
+    public void reset() {
+        visited=false;
+        reached=false;
+    }
+
+    /**
+     * Note that one of the edges of this node was removed. The removed
+     * edges stay in the list until they make up more than half of it, when
+     * it is compacted; a search over the list so never looks at more
+     * removed edges than live ones.
+     */
+    public void dropEdge() {
+        dropped++;
+        if (2*dropped>edges.size()) compact();
+    }
+
+    /**
+     * Take the removed edges out of the edge list of this node.
+     */
+    public void compact() {
+        ArrayDeque<Edge> live; // the edges kept
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Edge e; // general purpose edge
+
+        if (dropped==0) return;
+        live=new ArrayDeque<Edge>(edges.size()-dropped);
+        eIter=edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (!e.isRemoved()) live.add(e);
+        }
+        edges=live;
+        dropped=0;
+    }
+
+    /**
+     * Query the flag removed
+     * @return the value of the flag removed
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Set the removed flag to true
+     */
+    public void remove() {
+        removed=true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+// File: Optimiser.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Entry point for using the application as a library inside a running
+ * program. Unlike Main and Graph.optimise() it neither prints nor exits:
+ * reading a configuration file throws a ConfigurationException and solving
+ * a network returns a SelectionResult.
+ * <P>
+ * A network is read once with load() and can then be solved any number of
+ * times, for instance after changing capacities. An Optimiser keeps its
+ * engine, and the engine its work arrays, between solves, so solving
+ * networks of the same size repeatedly hardly allocates anything but the
+ * result. Neither an Optimiser nor a network may be used by two threads at
+ * the same time; give every thread its own.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Optimiser {
+    /**
+     * The maximum flow algorithm used for solving.
+     */
+    protected FlowEngine engine;
+    /**
+     * The search extracting the minimal cut, null to extract it on the
+     * calling thread.
+     */
+    protected ParallelSearch search;
+
+    /**
+     * Constructor for an Optimiser using the push-relabel engine in cut only
+     * mode, the fastest engine on most configurations.
+     */
+    public Optimiser() {
+        this(new PushRelabelEngine(true));
+    }
+
+    /**
+     * Constructor for the Optimiser class.
+     *
+     * @param e     Maximum flow algorithm to solve with
+     * @throws IllegalArgumentException Thrown when e is null.
+     */
+    public Optimiser(FlowEngine e) throws IllegalArgumentException {
+        if (e==null)
+            throw new IllegalArgumentException(
+                    "Attempted to solve without an engine.");
+        engine=e;
+    }
+
+    /**
+     * Constructor for an Optimiser extracting the minimal cut of huge
+     * networks with a ParallelSearch.
+     *
+     * @param e         Maximum flow algorithm to solve with
+     * @param threads   Number of threads searching the cut
+     * @throws IllegalArgumentException Thrown when e is null or threads is
+     *                                  less than 1.
+     */
+    public Optimiser(FlowEngine e, int threads)
+                                        throws IllegalArgumentException {
+        this(e);
+        search=new ParallelSearch(threads);
+    }
+
+    /**
+     * Read a configuration file into a graph.
+     *
+     * @param G         Graph to add the technologies and dependencies to
+     * @param src       Name of the file, "-" for the standard input
+     * @param threads   Number of threads reading the dependencies (see
+     *                  ConfigReader)
+     * @throws ConfigurationException   Thrown when the file can not be read
+     *                                  or does not describe a valid graph.
+     * @throws IllegalArgumentException Thrown when threads is less than 1.
+     */
+    public static void read(Graph G, String src, int threads)
+                    throws ConfigurationException, IllegalArgumentException {
+        ConfigReader reader; // byte level parser
+
+        reader=new ConfigReader(G,threads);
+        try {
+            reader.read(src);
+        } catch (InputMismatchException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+"' is malformed",e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+"' is inconsistent",e);
+        } catch (FileNotFoundException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+"' was not found",e);
+        } catch (IOException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+"' could not be read",e);
+        } catch (NoSuchElementException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+"' ended prematurely",e);
+        } catch (NullPointerException e) {
+            throw new ConfigurationException(
+                    "Configuration file '"+src+
+                    "' causes access to undefined data",e);
+        }
+    }
+
+    /**
+     * Read a configuration file or snapshot into a network on the calling
+     * thread only.
+     *
+     * @param src   Name of the file, "-" for the standard input
+     * @return      The network described by the file
+     * @throws ConfigurationException Thrown when the file can not be read or
+     *                                does not describe a valid network.
+     */
+    public static FlowNetwork load(String src) throws ConfigurationException {
+        return load(src,1);
+    }
+
+    /**
+     * Read a configuration file or snapshot into a network. A snapshot is
+     * recognised by its magic number and loaded without parsing.
+     *
+     * @param src       Name of the file, "-" for the standard input
+     * @param threads   Number of threads reading the dependencies of a
+     *                  configuration file
+     * @return          The network described by the file
+     * @throws ConfigurationException   Thrown when the file can not be read
+     *                                  or does not describe a valid network.
+     * @throws IllegalArgumentException Thrown when threads is less than 1.
+     */
+    public static FlowNetwork load(String src, int threads)
+                    throws ConfigurationException, IllegalArgumentException {
+        Graph G; // graph read from a configuration file
+
+        if (!Snapshot.isSnapshot(src)) {
+            G=new Graph();
+            read(G,src,threads);
+            return G.freeze();
+        }
+
+        try {
+            return Snapshot.read(src);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException(
+                    "Snapshot file '"+src+"' is inconsistent",e);
+        } catch (IOException e) {
+            throw new ConfigurationException(
+                    "Snapshot file '"+src+"' could not be read",e);
+        }
+    }
+
+    /**
+     * Solve a network from the zero flow on and collect the chosen
+     * technologies. Any flow left in the network by an earlier solve is
+     * discarded first.
+     *
+     * @param net   Network to solve
+     * @return      The maximum revenue and the technologies reaching it
+     */
+    public SelectionResult solve(FlowNetwork net) {
+        long start; // time the solve started
+
+        start=System.nanoTime();
+        net.reset();
+        return resume(net,start);
+    }
+
+    /**
+     * Solve a network from the flow its residual capacities describe on and
+     * collect the chosen technologies. Starting from a maximum flow of a
+     * slightly different network usually leaves little to augment.
+     *
+     * @param net   Network to solve, holding a valid flow
+     * @return      The maximum revenue and the technologies reaching it
+     */
+    public SelectionResult resume(FlowNetwork net) {
+        return resume(net,System.nanoTime());
+    }
+
+    /**
+     * Solve a network from its current flow on, see resume(FlowNetwork).
+     *
+     * @param net   Network to solve, holding a valid flow
+     * @param start Time the solve started
+     * @return      The maximum revenue and the technologies reaching it
+     */
+    protected SelectionResult resume(FlowNetwork net, long start) {
+        boolean[] chosen; // source side of the minimal cut
+        int[] ids; // node numbers of the chosen technologies
+        String[] names; // their names
+        long revenue; // the result
+        int v,k; // general purpose node and counter
+
+        engine.maxFlow(net);
+        chosen=net.findCut(search);
+        revenue=net.getRevenue();
+
+        k=0;
+        for(v=0;v<net.nodeCount;v++) {
+            if (chosen[v] && v!=net.source) k++;
+        }
+        ids=new int[k];
+        names=new String[k];
+        k=0;
+        for(v=0;v<net.nodeCount;v++) {
+            if (!chosen[v] || v==net.source) continue;
+            ids[k]=v;
+            names[k++]=net.getName(v);
+        }
+
+        return new SelectionResult(revenue,ids,names,net.profit-revenue,
+                    net.nodeCount,net.arcCount,System.nanoTime()-start);
+    }
+}
@@ -0,0 +1,419 @@
+// File: ParallelPushRelabelEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A push-relabel maximum flow algorithm that discharges nodes on several
+ * threads at once. Active nodes are kept in a lock-free queue shared by all
+ * threads, and residual capacities, excesses and labels are atomic so that
+ * two threads working on neighbouring nodes never need a lock.
+ * <P>
+ * The queue is a ring of plain node numbers, so that taking a node from it
+ * or adding one does not create an object. Every slot has a turn telling
+ * which pass over the ring may write or read it next, as in the bounded
+ * queue of Vyukov. A node is never in the queue twice, so a ring with room
+ * for every node can not fill up.
+ * <P>
+ * Because a thread may see a label that a neighbour is just changing, a
+ * node does not push over arcs going exactly one label down as in the
+ * PushRelabelEngine, but to its lowest neighbour whenever that neighbour is
+ * lower than itself, and only raises its own label when no neighbour is
+ * lower. This rule stays correct with outdated labels (Hong, 2008). Every
+ * so much relabel work the threads stop and the labels are set to the exact
+ * distances to the sink by a ParallelSearch on the same number of threads.
+ * <P>
+ * Like the PushRelabelEngine in cut only mode the engine stops as soon as
+ * no excess can reach the sink any more, which the exact labels of the last
+ * search prove. The residual capacities then describe a maximum preflow.
+ * Which preflow is found depends on the timing of the threads, but the
+ * minimal cut, and therefore the revenue and the chosen technologies, does
+ * not.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ParallelPushRelabelEngine implements FlowEngine {
+    /**
+     * A global relabeling is done once the relabel work exceeds this many
+     * times the node count plus the arc count.
+     */
+    protected static final int GLOBAL_FACTOR=6;
+    /**
+     * Number of threads discharging nodes.
+     */
+    protected int threads;
+    /**
+     * The network being solved.
+     */
+    protected FlowNetwork net;
+    /**
+     * The residual capacities of the network while it is being solved.
+     */
+    protected AtomicLongArray residual;
+    /**
+     * The flow entering every node that has not left it yet.
+     */
+    protected AtomicLongArray excess;
+    /**
+     * The (distance) label of every node.
+     */
+    protected AtomicIntegerArray label;
+    /**
+     * 1 for nodes in the active queue or being discharged, 0 otherwise. It
+     * makes sure only one thread at a time discharges a node.
+     */
+    protected AtomicIntegerArray queued;
+    /**
+     * The active nodes waiting to be discharged, a ring whose size is a power
+     * of two.
+     */
+    protected int[] active;
+    /**
+     * The position in the ring at which every slot is written next, or that
+     * position plus one once it is written and may be read.
+     */
+    protected AtomicLongArray turn;
+    /**
+     * Position in the ring of the next node added.
+     */
+    protected AtomicLong tail;
+    /**
+     * Position in the ring of the next node taken.
+     */
+    protected AtomicLong head;
+    /**
+     * Number of nodes queued or being discharged.
+     */
+    protected AtomicInteger pending;
+    /**
+     * Relabel work done since the last global relabeling.
+     */
+    protected AtomicLong work;
+    /**
+     * Relabel work allowed between global relabelings.
+     */
+    protected long limit;
+    /**
+     * The search setting the labels in a global relabeling.
+     */
+    protected ParallelSearch search;
+    /**
+     * The distance of every node to the sink found by the search.
+     */
+    protected int[] dist;
+    /**
+     * The root of the search, the sink.
+     */
+    protected int[] roots;
+    /**
+     * The threads doing the work.
+     */
+    protected ExecutorService pool;
+
+    /**
+     * Constructor for an engine using every available processor.
+     */
+    public ParallelPushRelabelEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for the ParallelPushRelabelEngine class.
+     *
+     * @param t     Number of threads to use
+     * @throws IllegalArgumentException Thrown when t is less than 1.
+     */
+    public ParallelPushRelabelEngine(int t) throws IllegalArgumentException {
+        if (t<1)
+            throw new IllegalArgumentException(
+                    "Attempted to use less than one thread.");
+        threads=t;
+        search=new ParallelSearch(t);
+        roots=new int[1];
+    }
+
+    /**
+     * Make sure the work arrays fit the given network and copy its residual
+     * capacities into the atomic array. The arrays are kept between calls
+     * so that solving networks of the same size repeatedly does not
+     * allocate.
+     *
+     * @param n     Network about to be solved
+     */
+    protected void prepare(FlowNetwork n) {
+        int a,v; // general purpose arc and node
+
+        net=n;
+        if (label==null || label.length()<net.nodeCount) {
+            excess=new AtomicLongArray(net.nodeCount);
+            label=new AtomicIntegerArray(net.nodeCount);
+            queued=new AtomicIntegerArray(net.nodeCount);
+            dist=new int[net.nodeCount];
+            active=new int[Integer.highestOneBit(2*net.nodeCount-1)];
+            turn=new AtomicLongArray(active.length);
+        }
+        if (residual==null || residual.length()<net.arcCount)
+            residual=new AtomicLongArray(net.arcCount);
+        for(a=0;a<net.arcCount;a++) residual.set(a,net.residual[a]);
+        for(v=0;v<net.nodeCount;v++) excess.set(v,0);
+        tail=new AtomicLong();
+        head=new AtomicLong();
+        pending=new AtomicInteger();
+        work=new AtomicLong();
+        limit=(long)GLOBAL_FACTOR*net.nodeCount+net.arcCount;
+    }
+
+    /**
+     * Run the same task on every thread and wait until all have finished.
+     *
+     * @param task  Task to run, given the number of the thread
+     */
+    protected void runAll(final Worker task) {
+        ArrayList<Callable<Object>> calls; // one call per thread
+        int k; // thread number
+
+        calls=new ArrayList<Callable<Object>>();
+        for(k=0;k<threads;k++) {
+            final int id=k;
+            calls.add(new Callable<Object>() {
+                public Object call() {
+                    task.run(id);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for(Future<Object> f : pool.invokeAll(calls)) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solving failed", e.getCause());
+        }
+    }
+
+    /**
+     * Set every label to the exact residual distance to the sink by a
+     * breadth first search backwards from it, spread over the threads.
+     * Nodes that can not reach the sink get the label n.
+     */
+    protected void globalRelabel() {
+        int n,v; // node count and general purpose node
+
+        n=net.nodeCount;
+        roots[0]=net.sink;
+        search.search(net,residual,roots,1,true,net.source,-1,dist);
+        for(v=0;v<n;v++) label.set(v,(dist[v]<0)?(n):(dist[v]));
+    }
+
+    /**
+     * Empty the active queue. It must not be used by any thread meanwhile.
+     */
+    protected void clear() {
+        int i; // general purpose slot
+
+        for(i=0;i<active.length;i++) turn.set(i,i);
+        tail.set(0);
+        head.set(0);
+    }
+
+    /**
+     * Add a node to the ring of active nodes. A thread claims the slot at
+     * the tail, fills it and then passes its turn on to the readers.
+     *
+     * @param v     Node to add
+     */
+    protected void offer(int v) {
+        long p,d; // position claimed and how far its slot is ahead of it
+        int i; // slot at the position
+
+        while(true) {
+            p=tail.get();
+            i=(int)p&(active.length-1);
+            d=turn.get(i)-p;
+            if (d==0 && tail.compareAndSet(p,p+1)) {
+                active[i]=v;
+                turn.set(i,p+1);
+                return;
+            }
+            // The slot is still being read, which a full ring would cause
+            if (d<0) Thread.yield();
+        }
+    }
+
+    /**
+     * Take a node from the ring of active nodes. A thread claims the slot at
+     * the head once it is written, reads it and then passes its turn on to
+     * the writers of the next pass over the ring.
+     *
+     * @return      The node taken, -1 if the ring is empty
+     */
+    protected int poll() {
+        long p,d; // position claimed and how far its slot is ahead of it
+        int i,v; // slot at the position and the node in it
+
+        while(true) {
+            p=head.get();
+            i=(int)p&(active.length-1);
+            d=turn.get(i)-(p+1);
+            if (d<0) return -1; // not written yet
+            if (d==0 && head.compareAndSet(p,p+1)) {
+                v=active[i];
+                turn.set(i,p+active.length);
+                return v;
+            }
+        }
+    }
+
+    /**
+     * Put a node in the active queue unless it is there already or being
+     * discharged.
+     *
+     * @param v     Node to activate
+     */
+    protected void activate(int v) {
+        if (queued.compareAndSet(v,0,1)) {
+            pending.incrementAndGet();
+            offer(v);
+        }
+    }
+
+    /**
+     * Push the excess of a node to its lowest neighbour over arcs with
+     * residual capacity, raising its label whenever no neighbour is lower,
+     * until the excess is gone or the node can no longer reach the sink.
+     * Only the thread discharging a node lowers its excess or the residual
+     * capacities of its arcs; other threads only raise them.
+     *
+     * @param u     Node to discharge
+     * @return      The relabel work done
+     */
+    protected long discharge(int u) {
+        long e,d,done; // excess, amount pushed and work done
+        int n,hu,low,best,a,v; // node count, labels, arcs and node
+
+        n=net.nodeCount;
+        done=0;
+        while((e=excess.get(u))>0 && (hu=label.get(u))<n) {
+            low=n;
+            best=-1;
+            for(a=net.first[u];a<net.first[u+1];a++) {
+                if (residual.get(a)>0 && label.get(net.head[a])<low) {
+                    low=label.get(net.head[a]);
+                    best=a;
+                }
+            }
+            done+=net.first[u+1]-net.first[u];
+
+            if (best>=0 && hu>low) {
+                v=net.head[best];
+                d=Math.min(e,residual.get(best));
+                residual.addAndGet(best,-d);
+                residual.addAndGet(net.mate[best],d);
+                excess.addAndGet(u,-d);
+                excess.addAndGet(v,d);
+                if (v!=net.sink && v!=net.source) activate(v);
+            } else {
+                label.set(u,Math.min(low+1,n));
+                done+=12;
+            }
+        }
+
+        return done;
+    }
+
+    /**
+     * Discharge nodes from the active queue until it is empty and no other
+     * thread can add to it any more, or until enough relabel work was done
+     * to need a global relabeling.
+     */
+    protected void dischargeAll() {
+        int u; // node taken from the queue
+
+        while(work.get()<=limit) {
+            u=poll();
+            if (u<0) {
+                if (pending.get()==0) return;
+                Thread.yield();
+                continue;
+            }
+
+            work.addAndGet(discharge(u));
+            queued.set(u,0);
+            // Excess may have arrived while u was being discharged
+            if (excess.get(u)>0 && label.get(u)<net.nodeCount) activate(u);
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Saturate all arcs leaving the source and move the excess towards the
+     * sink in rounds, each starting with a global relabeling, until none of
+     * the excess can reach the sink.
+     *
+     * @param n     Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork n) {
+        long d; // amount pushed
+        int a,s,v; // general purpose arc, the source and a node
+
+        prepare(n);
+        s=net.source;
+        for(a=net.first[s];a<net.first[s+1];a++) {
+            d=residual.get(a);
+            if (d==0 || net.head[a]==s) continue;
+            residual.set(a,0);
+            residual.addAndGet(net.mate[a],d);
+            excess.addAndGet(net.head[a],d);
+        }
+
+        pool=Executors.newFixedThreadPool(threads);
+        try {
+            while(true) {
+                globalRelabel();
+
+                clear();
+                pending.set(0);
+                for(v=0;v<net.nodeCount;v++) {
+                    queued.set(v,0);
+                    if (v!=net.source && v!=net.sink && excess.get(v)>0 &&
+                                                label.get(v)<net.nodeCount)
+                        activate(v);
+                }
+                if (pending.get()==0) break; // a maximum preflow
+
+                work.set(0);
+                runAll(new Worker() {
+                    public void run(int k) {
+                        dischargeAll();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for(a=0;a<net.arcCount;a++) net.residual[a]=residual.get(a);
+        return excess.get(net.sink);
+    }
+
+    /**
+     * A piece of work done by each thread.
+     */
+    protected interface Worker {
+        /**
+         * Do the work of one thread.
+         *
+         * @param k     Number of the thread, from 0 up to the thread count
+         */
+        void run(int k);
+    }
+}
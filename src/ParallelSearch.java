@@ -0,0 +1,487 @@
+// File: ParallelSearch.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A breadth first search over the arcs of a FlowNetwork with residual
+ * capacity, built for networks with tens of millions of arcs. The search
+ * is level synchronous: all nodes of one level (the frontier) are expanded
+ * before any node of the next, and the frontier is cut into chunks which
+ * the threads take one by one. A node is claimed by setting its bit in an
+ * atomic bitmap, so every node enters the next frontier exactly once
+ * without a lock; every thread collects the nodes it claims in a buffer of
+ * its own and only reserves room in the next frontier once per buffer.
+ * <P>
+ * The search is direction optimising (Beamer, Asanovic and Patterson,
+ * 2012). While the frontier is small each of its nodes looks at all its
+ * arcs (top-down). Once the frontier has more than 1/ALPHA of the arcs of
+ * the nodes not reached yet, every node not reached yet looks for a parent
+ * in the frontier instead and stops at the first one it finds (bottom-up),
+ * which on wide networks skips most arcs. A thread searching bottom-up
+ * owns whole words of the bitmap, so it can set their bits without
+ * competing with the others. The frontier must hold at least 1/BETA of
+ * the nodes as well before the search turns bottom-up: the source and the
+ * sink have an arc to almost every node, but most of those nodes are out
+ * of reach and would look through all their arcs in vain. The search
+ * turns top-down again once the frontier has shrunk below the node count
+ * divided by BETA.
+ * <P>
+ * The search can run forwards, labelling every node with its distance from
+ * the nearest root, or backwards, labelling it with its distance to the
+ * nearest root, as the FlowEngines need for their levels and labels and
+ * FlowNetwork.findCut() for the minimal cut. Which direction a level is
+ * searched in never changes the distances. Levels of fewer than
+ * PARALLEL_LEVEL nodes are searched by the calling thread alone. The
+ * threads are started by the first level that needs them and stopped at
+ * the end of every search. A ParallelSearch keeps its work arrays between
+ * searches, but may not be used by two threads at the same time.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ParallelSearch {
+    /**
+     * The search turns bottom-up once the frontier has more than 1/ALPHA
+     * of the arcs of the nodes not reached yet (and 1/BETA of the nodes).
+     */
+    protected static final int ALPHA=14;
+    /**
+     * The search stays or turns top-down while the frontier has fewer than
+     * 1/BETA of the nodes.
+     */
+    protected static final int BETA=24;
+    /**
+     * Levels with fewer nodes to look at than this are searched by the
+     * calling thread alone.
+     */
+    protected static final int PARALLEL_LEVEL=1024;
+    /**
+     * Number of nodes a thread takes at a time, a multiple of the 32 nodes
+     * in a word of the bitmap.
+     */
+    protected static final int CHUNK=256;
+    /**
+     * Number of threads searching.
+     */
+    protected int threads;
+    /**
+     * The network being searched.
+     */
+    protected FlowNetwork net;
+    /**
+     * The residual capacities searched when they are kept in an array.
+     */
+    protected long[] plain;
+    /**
+     * The residual capacities searched when they are kept atomic.
+     */
+    protected AtomicLongArray shared;
+    /**
+     * true to search towards the roots instead of away from them.
+     */
+    protected boolean backward;
+    /**
+     * The distance of every node, -1 for nodes not reached.
+     */
+    protected int[] dist;
+    /**
+     * One bit per node, set once the node is reached.
+     */
+    protected AtomicIntegerArray reached;
+    /**
+     * The current level of the search.
+     */
+    protected int[] level;
+    /**
+     * The next level of the search.
+     */
+    protected int[] nextLevel;
+    /**
+     * Number of nodes in the next level.
+     */
+    protected AtomicInteger nextSize;
+    /**
+     * Number of arcs of the nodes in the next level.
+     */
+    protected AtomicLong nextArcs;
+    /**
+     * The next chunk to be taken by a thread.
+     */
+    protected AtomicInteger cursor;
+    /**
+     * The threads doing the work during a search, null while none are
+     * running.
+     */
+    protected ExecutorService pool;
+
+    /**
+     * Constructor for a search using every available processor.
+     */
+    public ParallelSearch() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for the ParallelSearch class.
+     *
+     * @param t     Number of threads to use
+     * @throws IllegalArgumentException Thrown when t is less than 1.
+     */
+    public ParallelSearch(int t) throws IllegalArgumentException {
+        if (t<1)
+            throw new IllegalArgumentException(
+                    "Attempted to use less than one thread.");
+        threads=t;
+        nextSize=new AtomicInteger();
+        nextArcs=new AtomicLong();
+        cursor=new AtomicInteger();
+    }
+
+    /**
+     * Produces the number of threads searching.
+     * @return the thread count
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Label the nodes of a network with their distance over arcs with
+     * residual capacity, see search(FlowNetwork,AtomicLongArray,...).
+     *
+     * @param n         Network to search, with the residual capacities of
+     *                  its current flow
+     * @param roots     Nodes to start from at distance 0
+     * @param count     Number of roots
+     * @param back      true to label the distance to the roots instead of
+     *                  from them
+     * @param skip      Node never to reach, -1 for none
+     * @param stop      Node after whose level the search ends, -1 to
+     *                  search everything
+     * @param d         Receives the distance of every node, -1 for the
+     *                  nodes not reached
+     * @return          The number of nodes reached
+     */
+    public int search(FlowNetwork n, int[] roots, int count, boolean back,
+                                            int skip, int stop, int[] d) {
+        plain=n.residual;
+        shared=null;
+        return run(n,roots,count,back,skip,stop,d);
+    }
+
+    /**
+     * Label the nodes of a network with their distance over arcs with
+     * residual capacity, the residual capacities being kept by an engine
+     * in an atomic array. Going forwards, the distance of a node is the
+     * least number of arcs leading to it from a root; going backwards, the
+     * least number leading from it to a root. No other thread may change
+     * the residual capacities during the search.
+     *
+     * @param n         Network to search
+     * @param r         Residual capacity of every arc of the network
+     * @param roots     Nodes to start from at distance 0
+     * @param count     Number of roots
+     * @param back      true to label the distance to the roots instead of
+     *                  from them
+     * @param skip      Node never to reach, -1 for none
+     * @param stop      Node after whose level the search ends, -1 to
+     *                  search everything
+     * @param d         Receives the distance of every node, -1 for the
+     *                  nodes not reached
+     * @return          The number of nodes reached
+     */
+    public int search(FlowNetwork n, AtomicLongArray r, int[] roots,
+                    int count, boolean back, int skip, int stop, int[] d) {
+        plain=null;
+        shared=r;
+        return run(n,roots,count,back,skip,stop,d);
+    }
+
+    /**
+     * Make sure the work arrays fit the given network.
+     *
+     * @param n     Network about to be searched
+     */
+    protected void prepare(FlowNetwork n) {
+        int i,words; // word of the bitmap and number of words
+
+        net=n;
+        words=(net.nodeCount+31)/32;
+        if (level==null || level.length<net.nodeCount) {
+            level=new int[net.nodeCount];
+            nextLevel=new int[net.nodeCount];
+        }
+        if (reached==null || reached.length()<words)
+            reached=new AtomicIntegerArray(words);
+        else
+            for(i=0;i<words;i++) reached.set(i,0);
+    }
+
+    /**
+     * Search level by level, choosing the direction of every level, until
+     * the frontier is empty or the level of stop is complete.
+     *
+     * @param n         Network to search
+     * @param roots     Nodes to start from at distance 0
+     * @param count     Number of roots
+     * @param back      true to label the distance to the roots
+     * @param skip      Node never to reach, -1 for none
+     * @param stop      Node after whose level the search ends, -1 for none
+     * @param d         Receives the distances
+     * @return          The number of nodes reached
+     */
+    protected int run(FlowNetwork n, int[] roots, int count, boolean back,
+                                            int skip, int stop, int[] d) {
+        int[] swap; // for exchanging the levels
+        boolean bottomUp; // searching the current level bottom-up
+        long frontierArcs,unreachedArcs; // arcs on both sides of the search
+        int size,total,depth,i,v; // level size, nodes reached and general
+
+        prepare(n);
+        backward=back;
+        dist=d;
+        Arrays.fill(dist,0,net.nodeCount,-1);
+        if (skip>=0) claim(skip);
+
+        size=0;
+        frontierArcs=0;
+        for(i=0;i<count;i++) {
+            v=roots[i];
+            if (!claim(v)) continue;
+            dist[v]=0;
+            level[size++]=v;
+            frontierArcs+=net.first[v+1]-net.first[v];
+        }
+        unreachedArcs=net.arcCount-frontierArcs;
+        total=size;
+        depth=0;
+        bottomUp=false;
+
+        try {
+            while(size>0 && (stop<0 || dist[stop]<0)) {
+                // Choose the direction of the next level
+                if (!bottomUp && frontierArcs>unreachedArcs/ALPHA &&
+                                                    size>=net.nodeCount/BETA)
+                    bottomUp=true;
+                else if (bottomUp && size<net.nodeCount/BETA)
+                    bottomUp=false;
+
+                final boolean up=bottomUp;
+                final int levelSize=size;
+                final int d1=++depth;
+
+                nextSize.set(0);
+                nextArcs.set(0);
+                cursor.set(0);
+                if (threads==1 ||
+                    ((up)?(net.nodeCount):(levelSize))<PARALLEL_LEVEL) {
+                    step(up,levelSize,d1);
+                } else {
+                    runAll(new Callable<Object>() {
+                        public Object call() {
+                            step(up,levelSize,d1);
+                            return null;
+                        }
+                    });
+                }
+
+                swap=level;
+                level=nextLevel;
+                nextLevel=swap;
+                size=nextSize.get();
+                frontierArcs=nextArcs.get();
+                unreachedArcs-=frontierArcs;
+                total+=size;
+            }
+        } finally {
+            if (pool!=null) pool.shutdown();
+            pool=null;
+        }
+
+        return total;
+    }
+
+    /**
+     * Run the same task on every thread and wait until all have finished.
+     *
+     * @param task  Task to run
+     */
+    protected void runAll(Callable<Object> task) {
+        ArrayList<Callable<Object>> calls; // one call per thread
+        int k; // thread number
+
+        if (pool==null) pool=Executors.newFixedThreadPool(threads);
+        calls=new ArrayList<Callable<Object>>();
+        for(k=0;k<threads;k++) calls.add(task);
+
+        try {
+            for(Future<Object> f : pool.invokeAll(calls)) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Searching failed", e.getCause());
+        }
+    }
+
+    /**
+     * Set the bit of a node unless another thread did so first.
+     *
+     * @param v     Node to claim
+     * @return      true if the calling thread claimed the node
+     */
+    protected boolean claim(int v) {
+        int w,bit; // word of the bitmap and bit of v in it
+
+        bit=1<<(v&31);
+        do {
+            w=reached.get(v>>>5);
+            if ((w&bit)!=0) return false;
+        } while(!reached.compareAndSet(v>>>5,w,w|bit));
+
+        return true;
+    }
+
+    /**
+     * Tell whether an arc has residual capacity.
+     *
+     * @param a     Arc to look at
+     * @return      true if flow can still be pushed over it
+     */
+    protected boolean open(int a) {
+        return (plain!=null)?(plain[a]>0):(shared.get(a)>0);
+    }
+
+    /**
+     * Take chunks of the current level, or of the nodes when searching
+     * bottom-up, until none are left and add the nodes found to the next
+     * level. This is the work of a single thread.
+     *
+     * @param up        true to search the level bottom-up
+     * @param size      Number of nodes in the current level
+     * @param d         Distance of the next level
+     */
+    protected void step(boolean up, int size, int d) {
+        int[] buffer; // nodes found and not added to the next level yet
+        long arcs; // arcs of the nodes found
+        int i,k,start,end; // general purpose, nodes in buffer and bounds
+
+        buffer=new int[CHUNK];
+        k=0;
+        arcs=0;
+        while(true) {
+            start=cursor.getAndAdd(CHUNK);
+            end=Math.min(start+CHUNK,(up)?(net.nodeCount):(size));
+            if (start>=end) break;
+            k=(up)?(bottomUp(start,end,d,buffer,k)):
+                                            (topDown(start,end,d,buffer,k));
+        }
+        for(i=0;i<k;i++) arcs+=net.first[buffer[i]+1]-net.first[buffer[i]];
+        flush(buffer,k);
+        nextArcs.addAndGet(arcs);
+    }
+
+    /**
+     * Add the nodes found by a thread to the next level, reserving room
+     * for all of them at once.
+     *
+     * @param buffer    Nodes found
+     * @param k         Number of nodes found
+     */
+    protected void flush(int[] buffer, int k) {
+        if (k>0) System.arraycopy(buffer,0,nextLevel,nextSize.getAndAdd(k),k);
+    }
+
+    /**
+     * Expand the nodes at positions start up to end of the current level
+     * over all their arcs.
+     *
+     * @param start     First position
+     * @param end       Position after the last one
+     * @param d         Distance of the next level
+     * @param buffer    Nodes found and not added to the next level yet
+     * @param k         Number of nodes in buffer
+     * @return          The number of nodes in buffer afterwards
+     */
+    protected int topDown(int start, int end, int d, int[] buffer, int k) {
+        int[] first,head,mate; // arrays of the network
+        int i,u,v,a; // position, general purpose nodes and arc
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        for(i=start;i<end;i++) {
+            u=level[i];
+            for(a=first[u];a<first[u+1];a++) {
+                v=head[a];
+                // Going backwards v must reach u over the reverse of a
+                if ((reached.get(v>>>5)&(1<<(v&31)))!=0 ||
+                                !open((backward)?(mate[a]):(a)) || !claim(v))
+                    continue;
+                dist[v]=d;
+                if (k==CHUNK) {
+                    flush(buffer,k);
+                    k=0;
+                }
+                buffer[k++]=v;
+            }
+        }
+
+        return k;
+    }
+
+    /**
+     * Let every node from start up to end not reached yet look for a
+     * parent in the current level. The range covers whole words of the
+     * bitmap, which no other thread touches meanwhile.
+     *
+     * @param start     First node, a multiple of 32
+     * @param end       Node after the last one
+     * @param d         Distance of the next level
+     * @param buffer    Nodes found and not added to the next level yet
+     * @param k         Number of nodes in buffer
+     * @return          The number of nodes in buffer afterwards
+     */
+    protected int bottomUp(int start, int end, int d, int[] buffer, int k) {
+        int[] first,head,mate; // arrays of the network
+        int w,old,v,a; // word of the bitmap, its old value, node and arc
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        w=0;
+        old=0;
+        for(v=start;v<end;v++) {
+            if ((v&31)==0) {
+                old=reached.get(v>>>5);
+                w=old;
+            }
+            if ((w&(1<<(v&31)))==0) {
+                for(a=first[v];a<first[v+1];a++) {
+                    // Going forwards the parent must reach v over the
+                    // reverse of a
+                    if (dist[head[a]]==d-1 &&
+                                        open((backward)?(a):(mate[a]))) {
+                        w|=1<<(v&31);
+                        dist[v]=d;
+                        if (k==CHUNK) {
+                            flush(buffer,k);
+                            k=0;
+                        }
+                        buffer[k++]=v;
+                        break;
+                    }
+                }
+            }
+            if (((v&31)==31 || v==end-1) && w!=old) reached.set(v>>>5,w);
+        }
+
+        return k;
+    }
+}
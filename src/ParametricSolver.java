@@ -0,0 +1,530 @@
+// File: ParametricSolver.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.math.BigInteger;
+
+/**
+ * Solves the technology selection for every value of a global cost
+ * multiplier lambda at once: the capacity of every cost edge becomes lambda
+ * times the cost, with lambda 1 being the normal problem. The best revenue
+ * as a function of lambda is piecewise linear, and the minimal optimal sets
+ * of technologies shrink as lambda grows, so the whole answer is a list of
+ * breakpoints with the technologies dropped at each of them.
+ * <P>
+ * The breakpoints are found by repeatedly intersecting the revenue lines of
+ * two optimal sets S1 and S2 (S2 inside S1) and solving at the intersection.
+ * Because the optimal sets are nested, everything in S2 can be fixed as
+ * chosen and everything outside S1 as rejected, so each solve only sees the
+ * technologies in between. Either the solve finds nothing better than the
+ * two lines, making the intersection a breakpoint, or it finds a set S in
+ * between, splitting the technologies into two smaller problems. The
+ * problems at one depth never share a technology. This is the search of
+ * Eisner and Severance: it costs one maximum flow per breakpoint and one
+ * per split, O(breakpoints) in all, each on a smaller network than the
+ * whole problem. The parametric flow of Gallo, Grigoriadis and Tarjan
+ * would find all breakpoints at the cost of a single maximum flow, but
+ * needs an engine that can continue after the capacities change.
+ * <P>
+ * The intersection b/a is applied by giving the profit edges a times and the
+ * cost edges b times their capacity. Should that not fit a long, the sub
+ * problem is solved with BigInteger capacities instead (see cutExact()),
+ * so every lambda tested is exactly the intersection. At the exact
+ * intersection a set found is either empty, making it a breakpoint, or
+ * strictly better than both lines, so that neither part of a split is
+ * ever empty.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ParametricSolver {
+    /**
+     * Largest capacity sum a sub problem may reach.
+     */
+    protected static final long LIMIT=FlowNetwork.INFINITE/2;
+    /**
+     * The network describing the problem at lambda 1.
+     */
+    protected FlowNetwork net;
+    /**
+     * The engine used to solve the sub problems.
+     */
+    protected FlowEngine engine;
+    /**
+     * Profit of every node, 0 for the source and sink.
+     */
+    protected long[] profit;
+    /**
+     * Cost of every node, 0 for the source and sink.
+     */
+    protected long[] cost;
+    /**
+     * Position of every node in the sub problem being built, -1 for nodes
+     * that are not part of it.
+     */
+    protected int[] local;
+    /**
+     * The breakpoints found, as {numerator, denominator} of lambda.
+     */
+    protected ArrayList<long[]> lambdas;
+    /**
+     * The technologies dropped at each breakpoint.
+     */
+    protected ArrayList<int[]> dropped;
+    /**
+     * The minimal optimal set for lambda just above 0.
+     */
+    protected int[] start;
+
+    /**
+     * Constructor for the ParametricSolver class. Reads the profit and cost
+     * of every technology from the network.
+     *
+     * @param n     Network of the problem at lambda 1, it is not changed
+     * @param e     Engine used to solve the sub problems
+     */
+    public ParametricSolver(FlowNetwork n, FlowEngine e) {
+        int u,a; // general purpose node and arc
+
+        net=n;
+        engine=e;
+        profit=new long[net.nodeCount];
+        cost=new long[net.nodeCount];
+        local=new int[net.nodeCount];
+        Arrays.fill(local,-1);
+        for(u=0;u<net.nodeCount;u++) {
+            for(a=net.first[u];a<net.first[u+1];a++) {
+                if (u==net.source && net.head[a]!=net.sink)
+                    profit[net.head[a]]+=net.capacity[a];
+                if (net.head[a]==net.sink && u!=net.source)
+                    cost[u]+=net.capacity[a];
+            }
+        }
+    }
+
+    /**
+     * Tests whether an arc is the forward arc of a dependency.
+     *
+     * @param a     Arc to test
+     * @return      true if the arc is a dependency edge
+     */
+    protected boolean isDependency(int a) {
+        return net.capacity[a]==FlowNetwork.INFINITE;
+    }
+
+    /**
+     * Mark every technology required, directly or not, by the marked ones.
+     *
+     * @param mark  Flags of the technologies, extended in place
+     * @return      The marked technologies
+     */
+    protected int[] closure(boolean[] mark) {
+        int[] queue; // breadth first search queue
+        int qHead,qTail,u,a; // queue pointers, node and arc
+
+        queue=new int[net.nodeCount];
+        qTail=0;
+        for(u=0;u<net.nodeCount;u++) if (mark[u]) queue[qTail++]=u;
+        for(qHead=0;qHead<qTail;qHead++) {
+            u=queue[qHead];
+            for(a=net.first[u];a<net.first[u+1];a++) {
+                if (isDependency(a) && !mark[net.head[a]]) {
+                    mark[net.head[a]]=true;
+                    queue[qTail++]=net.head[a];
+                }
+            }
+        }
+
+        return Arrays.copyOf(queue,qTail);
+    }
+
+    /**
+     * Find the minimal optimal set for lambda just above 0 (everything with
+     * a profit and what it requires) and for lambda towards infinity (the
+     * same, but only for technologies requiring nothing with a cost).
+     *
+     * @return the technologies chosen for lambda just above 0 but not for
+     *          very large lambda
+     */
+    protected int[] extremes() {
+        boolean[] low,high,costly; // marks of the three sets
+        int[] queue,lowSet; // breadth first search queue and result
+        int qHead,qTail,u,v,a,n; // queue pointers, nodes, arc and count
+
+        low=new boolean[net.nodeCount];
+        high=new boolean[net.nodeCount];
+        costly=new boolean[net.nodeCount];
+        queue=new int[net.nodeCount];
+
+        // Technologies requiring, directly or not, something with a cost
+        qTail=0;
+        for(u=0;u<net.nodeCount;u++) {
+            if (cost[u]>0) {
+                costly[u]=true;
+                queue[qTail++]=u;
+            }
+        }
+        for(qHead=0;qHead<qTail;qHead++) {
+            v=queue[qHead];
+            for(a=net.first[v];a<net.first[v+1];a++) {
+                u=net.head[a];
+                if (!costly[u] && isDependency(net.mate[a])) {
+                    costly[u]=true;
+                    queue[qTail++]=u;
+                }
+            }
+        }
+
+        for(u=0;u<net.nodeCount;u++) {
+            low[u]=profit[u]>0;
+            high[u]=profit[u]>0 && !costly[u];
+        }
+        start=closure(low);
+        closure(high);
+
+        lowSet=new int[start.length];
+        n=0;
+        for(u=0;u<start.length;u++)
+            if (!high[start[u]]) lowSet[n++]=start[u];
+
+        return Arrays.copyOf(lowSet,n);
+    }
+
+    /**
+     * Build the network of the problem restricted to the given technologies
+     * at lambda b/a, where all technologies still required outside of them
+     * count as chosen.
+     *
+     * @param free  Technologies to decide on, the technology free[i]
+     *              becoming node i+2
+     * @param a     Denominator of lambda, multiplies the profits
+     * @param b     Numerator of lambda, multiplies the costs
+     * @return      The network of the sub problem
+     */
+    protected FlowNetwork build(int[] free, long a, long b) {
+        String[] label; // node names of the sub problem
+        int[] from,to; // edge end points
+        long[] capacity; // edge capacities
+        int i,u,e,m; // general purpose counters, node and arc
+
+        for(i=0;i<free.length;i++) local[free[i]]=i+2;
+
+        // Count and then build the edges
+        m=0;
+        for(i=0;i<free.length;i++) {
+            u=free[i];
+            if (profit[u]>0) m++;
+            if (cost[u]>0) m++;
+            for(e=net.first[u];e<net.first[u+1];e++)
+                if (isDependency(e) && local[net.head[e]]>=0) m++;
+        }
+        label=new String[free.length+2];
+        from=new int[m];
+        to=new int[m];
+        capacity=new long[m];
+        label[0]=net.getName(net.source);
+        label[1]=net.getName(net.sink);
+        m=0;
+        for(i=0;i<free.length;i++) {
+            u=free[i];
+            label[i+2]=net.getName(u);
+            if (profit[u]>0) {
+                from[m]=0;
+                to[m]=i+2;
+                capacity[m++]=profit[u]*a;
+            }
+            if (cost[u]>0) {
+                from[m]=i+2;
+                to[m]=1;
+                capacity[m++]=cost[u]*b;
+            }
+            for(e=net.first[u];e<net.first[u+1];e++) {
+                if (isDependency(e) && local[net.head[e]]>=0) {
+                    from[m]=i+2;
+                    to[m]=local[net.head[e]];
+                    capacity[m++]=FlowNetwork.INFINITE;
+                }
+            }
+        }
+        for(i=0;i<free.length;i++) local[free[i]]=-1;
+
+        return new FlowNetwork(label,0,1,m,from,to,capacity);
+    }
+
+    /**
+     * Solve the problem restricted to the given technologies at lambda b/a,
+     * where all technologies still required outside of them count as chosen.
+     *
+     * @param free  Technologies to decide on
+     * @param a     Denominator of lambda, multiplies the profits
+     * @param b     Numerator of lambda, multiplies the costs
+     * @param p     Sum of the profits of free
+     * @return      The technologies of the minimal optimal set
+     */
+    protected int[] solve(int[] free, long a, long b, long p) {
+        FlowNetwork sub; // the sub problem
+        boolean[] chosen; // cut of the sub problem
+        int[] result; // chosen technologies
+        int i,n; // general purpose counters
+
+        if (a<=1 || p<=LIMIT/a) {
+            sub=build(free,a,b);
+            engine.maxFlow(sub);
+            chosen=sub.findCut();
+        } else {
+            // The capacities do not fit a long
+            chosen=cutExact(build(free,1,1),a,b);
+        }
+
+        result=new int[free.length];
+        n=0;
+        for(i=0;i<free.length;i++) if (chosen[i+2]) result[n++]=free[i];
+
+        return Arrays.copyOf(result,n);
+    }
+
+    /**
+     * Find the minimal cut of a sub problem at lambda b/a with capacities
+     * of any size. Dinic's algorithm runs on BigInteger residual capacities:
+     * every profit arc gets a times and every cost arc b times the capacity
+     * it has in the network, and a dependency more than all profit arcs
+     * together. Only used when the capacities do not fit a long, so speed
+     * matters less than exactness.
+     *
+     * @param sub   Sub problem built with lambda 1
+     * @param a     Denominator of lambda, multiplies the profits
+     * @param b     Numerator of lambda, multiplies the costs
+     * @return      Flags marking the source side of the minimal cut
+     */
+    protected boolean[] cutExact(FlowNetwork sub, long a, long b) {
+        BigInteger[] residual; // residual capacity of every arc
+        BigInteger infinite,augment; // dependency capacity and bottleneck
+        int[] level,current,path,queue; // Dinic work arrays
+        int qHead,qTail,depth,u,v,x,i,cut; // queue, path, nodes and arcs
+
+        infinite=BigInteger.valueOf(sub.profit).multiply(
+                                    BigInteger.valueOf(a)).add(BigInteger.ONE);
+        residual=new BigInteger[sub.arcCount];
+        for(u=0;u<sub.nodeCount;u++) {
+            for(x=sub.first[u];x<sub.first[u+1];x++) {
+                if (sub.capacity[x]==0) residual[x]=BigInteger.ZERO;
+                else if (sub.capacity[x]==FlowNetwork.INFINITE)
+                    residual[x]=infinite;
+                else
+                    residual[x]=BigInteger.valueOf(sub.capacity[x]).multiply(
+                            BigInteger.valueOf((u==sub.source)?(a):(b)));
+            }
+        }
+
+        level=new int[sub.nodeCount];
+        current=new int[sub.nodeCount];
+        path=new int[sub.nodeCount];
+        queue=new int[sub.nodeCount];
+        while(true) {
+            // Label the nodes with their distance from the source
+            Arrays.fill(level,-1);
+            level[sub.source]=0;
+            queue[0]=sub.source;
+            qTail=1;
+            for(qHead=0;qHead<qTail;qHead++) {
+                u=queue[qHead];
+                for(x=sub.first[u];x<sub.first[u+1];x++) {
+                    v=sub.head[x];
+                    if (level[v]<0 && residual[x].signum()>0) {
+                        level[v]=level[u]+1;
+                        queue[qTail++]=v;
+                    }
+                }
+            }
+            if (level[sub.sink]<0) break;
+
+            // Push a blocking flow, see DinicEngine.blockingFlow()
+            System.arraycopy(sub.first,0,current,0,sub.nodeCount);
+            depth=0;
+            u=sub.source;
+            while(true) {
+                if (u==sub.sink) {
+                    augment=residual[path[0]];
+                    for(i=1;i<depth;i++) augment=augment.min(residual[path[i]]);
+                    cut=depth;
+                    for(i=0;i<depth;i++) {
+                        x=path[i];
+                        residual[x]=residual[x].subtract(augment);
+                        residual[sub.mate[x]]=
+                                        residual[sub.mate[x]].add(augment);
+                        if (residual[x].signum()==0 && cut==depth) cut=i;
+                    }
+                    depth=cut;
+                    u=(depth==0)?(sub.source):(sub.head[path[depth-1]]);
+                    continue;
+                }
+
+                for(x=current[u];x<sub.first[u+1];x++) {
+                    if (residual[x].signum()>0 &&
+                                    level[sub.head[x]]==level[u]+1) break;
+                }
+                current[u]=x;
+                if (x<sub.first[u+1]) {
+                    path[depth++]=x;
+                    u=sub.head[x];
+                    continue;
+                }
+
+                level[u]=-1;
+                if (depth==0) break;
+                x=path[--depth];
+                u=sub.head[sub.mate[x]];
+                current[u]++;
+            }
+        }
+
+        // The nodes still labelled are those the source reaches
+        for(u=0;u<sub.nodeCount;u++) sub.chosen[u]=(level[u]>=0);
+        return sub.chosen;
+    }
+
+    /**
+     * Find all breakpoints. Each work item holds the technologies between
+     * two optimal sets; the lines of those sets intersect at P/C, where P
+     * and C are the profit and cost of exactly these technologies.
+     */
+    public void solve() {
+        ArrayDeque<int[]> work; // technologies between two optimal sets
+        int[] free,better,rest; // work item and its split
+        long p,c,a,b,g; // profit, cost and lambda b/a
+        int i,n; // general purpose counters
+
+        lambdas=new ArrayList<long[]>();
+        dropped=new ArrayList<int[]>();
+        work=new ArrayDeque<int[]>();
+        free=extremes();
+        if (free.length>0) work.add(free);
+
+        while(!work.isEmpty()) {
+            free=work.removeFirst();
+            p=0;
+            c=0;
+            for(i=0;i<free.length;i++) {
+                p+=profit[free[i]];
+                c+=cost[free[i]];
+            }
+            g=BigInteger.valueOf(p).gcd(BigInteger.valueOf(c)).longValue();
+            a=c/g;
+            b=p/g;
+
+            better=solve(free,a,b,p);
+            if (better.length==0) {
+                // Nothing beats the two lines: a breakpoint at p/c
+                lambdas.add(new long[] {b,a});
+                dropped.add(free);
+                continue;
+            }
+
+            // Split into the part below and above the better set
+            rest=new int[free.length-better.length];
+            for(i=0;i<better.length;i++) local[better[i]]=0;
+            n=0;
+            for(i=0;i<free.length;i++)
+                if (local[free[i]]<0) rest[n++]=free[i];
+            for(i=0;i<better.length;i++) local[better[i]]=-1;
+            if (rest.length>0) work.add(rest);
+            work.add(better);
+        }
+    }
+
+    /**
+     * Print the breakpoints as a table. The first row gives the set for
+     * lambda just above 0, every following row the lambda at which the
+     * listed technologies are dropped. Each row also gives the profit, cost
+     * and size of the set from its lambda up to the next one, so that the
+     * revenue at any lambda in between is profit minus lambda times cost.
+     */
+    public void print() {
+        StringBuilder out; // collected output
+        Integer[] order; // breakpoints sorted on lambda
+        Comparator<Integer> byLambda; // compares breakpoints on lambda
+        int[] set; // technologies added or dropped
+        long[] lambda; // current breakpoint
+        long p,c; // profit and cost of the current set
+        int i,j,n; // general purpose counters
+
+        out=new StringBuilder();
+        out.append("#lambda profit cost count changes\n");
+        set=start.clone();
+        Arrays.sort(set);
+        p=0;
+        c=0;
+        out.append('0');
+        for(j=0;j<set.length;j++) {
+            p+=profit[set[j]];
+            c+=cost[set[j]];
+        }
+        n=set.length;
+        out.append(' ').append(p).append(' ').append(c);
+        out.append(' ').append(n);
+        for(j=0;j<set.length;j++)
+            out.append(" +").append(net.getName(set[j]));
+        out.append('\n');
+
+        byLambda=new Comparator<Integer>() {
+            public int compare(Integer x, Integer y) {
+                long[] l,r; // the two fractions
+
+                l=lambdas.get(x);
+                r=lambdas.get(y);
+                return BigInteger.valueOf(l[0]).multiply(
+                        BigInteger.valueOf(r[1])).compareTo(
+                        BigInteger.valueOf(r[0]).multiply(
+                        BigInteger.valueOf(l[1])));
+            }
+        };
+        order=new Integer[lambdas.size()];
+        for(i=0;i<order.length;i++) order[i]=i;
+        Arrays.sort(order,byLambda);
+
+        for(i=0;i<order.length;i++) {
+            lambda=lambdas.get(order[i]);
+            out.append(lambda[0]);
+            if (lambda[1]!=1) out.append('/').append(lambda[1]);
+
+            // Breakpoints of different sub problems may coincide
+            set=dropped.get(order[i]);
+            while(i+1<order.length &&
+                            byLambda.compare(order[i],order[i+1])==0) {
+                i++;
+                set=merge(set,dropped.get(order[i]));
+            }
+            Arrays.sort(set);
+            for(j=0;j<set.length;j++) {
+                p-=profit[set[j]];
+                c-=cost[set[j]];
+            }
+            n-=set.length;
+            out.append(' ').append(p).append(' ').append(c);
+            out.append(' ').append(n);
+            for(j=0;j<set.length;j++)
+                out.append(" -").append(net.getName(set[j]));
+            out.append('\n');
+        }
+
+        System.out.print(out);
+    }
+
+    /**
+     * Join two sets of technologies.
+     *
+     * @param x     First set
+     * @param y     Second set
+     * @return      All technologies of both sets
+     */
+    protected static int[] merge(int[] x, int[] y) {
+        int[] r; // result
+
+        r=Arrays.copyOf(x,x.length+y.length);
+        System.arraycopy(y,0,r,x.length,y.length);
+        return r;
+    }
+}
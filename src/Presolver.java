@@ -0,0 +1,560 @@
+// File: Presolver.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Reduces a Graph to a smaller one with the same best revenue before it is
+ * solved, and translates the chosen technologies of the smaller graph back.
+ * The reductions are applied in this order:
+ * <UL>
+ * <LI>Technologies on a cycle of dependencies require each other, so they
+ * are either all chosen or none of them is. Every strongly connected
+ * component of the dependency relation is condensed into a single
+ * technology carrying the summed profit minus cost of its members, as a
+ * profit when it is positive and as a cost otherwise. The components are
+ * found with Tarjan's algorithm in time linear in the number of
+ * dependencies.
+ * <LI>A technology with a positive value that requires nothing is in every
+ * best set, because adding it to a closed set keeps the set closed. It is
+ * fixed as chosen and its dependants no longer need to require it.
+ * <LI>A technology without a positive value that nothing requires is in no
+ * minimal best set, because leaving it out keeps the set closed and does
+ * not lower the revenue. It is fixed as rejected and no longer counts as a
+ * dependant of what it requires.
+ * <LI>A dependency of a technology on another one that is also directly
+ * required by one of its other direct requirements is redundant and is
+ * dropped. Repeated dependencies are already gone after condensing. This
+ * only looks one requirement deep, so it is not a full transitive
+ * reduction: for u->v, v->w, w->x and u->x the dependency u->x is kept. A
+ * dependency kept although redundant costs the solve some work but never
+ * changes the result, while a full reduction could cost time quadratic in
+ * the size of the graph.
+ * </UL>
+ * Fixing technologies may make others fixable, so the second and third
+ * rule are repeated until neither applies any more. Only the technologies
+ * that are left, the core, are put in the reduced graph, with the last rule
+ * applied to the dependencies between them. None of the rules
+ * changes which sets are best or the revenue, so the minimal best set of
+ * the core plus the technologies fixed as chosen is the minimal best set of
+ * the original graph.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Presolver {
+    /**
+     * The state of a group that is still part of the core.
+     */
+    protected static final int CORE=0;
+    /**
+     * The state of a group fixed as chosen.
+     */
+    protected static final int CHOSEN=1;
+    /**
+     * The state of a group fixed as rejected.
+     */
+    protected static final int REJECTED=2;
+    /**
+     * The graph being reduced.
+     */
+    protected Graph original;
+    /**
+     * The reduced graph, or the original when it could not be reduced.
+     */
+    protected Graph reduced;
+    /**
+     * The nodes of the original graph by number.
+     */
+    protected Node[] members;
+    /**
+     * For every node of the original graph the number of its group, the
+     * strongly connected component it belongs to.
+     */
+    protected int[] group;
+    /**
+     * The summed profit minus cost of every group.
+     */
+    protected long[] weight;
+    /**
+     * The state of every group: CORE, CHOSEN or REJECTED.
+     */
+    protected int[] state;
+    /**
+     * For every group in the core the number of its node in the reduced
+     * graph.
+     */
+    protected int[] place;
+    /**
+     * Offset of the requirements of every group in required.
+     */
+    protected int[] reqFirst;
+    /**
+     * The groups required by every group, without duplicates.
+     */
+    protected int[] required;
+    /**
+     * Offset of the dependants of every group in dependant.
+     */
+    protected int[] depFirst;
+    /**
+     * The groups requiring every group, without duplicates.
+     */
+    protected int[] dependant;
+    /**
+     * The summed value of the technologies fixed as chosen.
+     */
+    protected long fixed;
+    /**
+     * Number of technologies and dependencies of the original graph.
+     */
+    protected int techCount,depCount;
+    /**
+     * Number of technologies merged away by condensing cycles.
+     */
+    protected int merged;
+    /**
+     * Number of dependencies dropped by condensing cycles, either because
+     * they lay within a cycle or because they became duplicates.
+     */
+    protected int inCycles;
+    /**
+     * Number of technologies fixed as chosen and as rejected.
+     */
+    protected int forcedIn,forcedOut;
+    /**
+     * Number of redundant dependencies dropped.
+     */
+    protected int redundant;
+
+    /**
+     * Constructor for the Presolver class.
+     *
+     * @param G     Graph to reduce, it is not changed
+     */
+    public Presolver(Graph G) {
+        original=G;
+    }
+
+    /**
+     * Number the strongly connected components of the dependency relation
+     * with Tarjan's algorithm. The depth first search uses an explicit
+     * stack so that long dependency chains can not overflow the call stack.
+     *
+     * @param first     Offset of the dependencies of every node in head
+     * @param head      Required node of every dependency
+     * @return          The component of every node, numbered in reverse
+     *                  topological order
+     */
+    protected static int[] strongComponents(int[] first, int[] head) {
+        int[] order,low,comp; // discovery number, lowest reachable, result
+        int[] stack,path,next; // Tarjan stack, search path, next dependency
+        int n,count,found,sp,depth,r,u,v,w; // counters and general purpose
+
+        n=first.length-1;
+        order=new int[n];
+        low=new int[n];
+        comp=new int[n];
+        stack=new int[n];
+        path=new int[n];
+        next=new int[n];
+        Arrays.fill(order,-1);
+        Arrays.fill(comp,-1);
+        count=0;
+        found=0;
+        sp=0;
+
+        for(r=0;r<n;r++) {
+            if (order[r]>=0) continue;
+            order[r]=low[r]=count++;
+            stack[sp++]=r;
+            next[r]=first[r];
+            path[0]=r;
+            depth=1;
+
+            while(depth>0) {
+                u=path[depth-1];
+                if (next[u]<first[u+1]) {
+                    v=head[next[u]++];
+                    if (order[v]<0) { // descend into v
+                        order[v]=low[v]=count++;
+                        stack[sp++]=v;
+                        next[v]=first[v];
+                        path[depth++]=v;
+                    } else if (comp[v]<0 && order[v]<low[u]) {
+                        low[u]=order[v]; // v is still on the stack
+                    }
+                    continue;
+                }
+
+                // All dependencies of u done, retreat
+                depth--;
+                if (depth>0 && low[u]<low[path[depth-1]])
+                    low[path[depth-1]]=low[u];
+                if (low[u]==order[u]) { // u is the root of a component
+                    do {
+                        w=stack[--sp];
+                        comp[w]=found;
+                    } while(w!=u);
+                    found++;
+                }
+            }
+        }
+
+        return comp;
+    }
+
+    /**
+     * Condense the strongly connected components of the dependency relation
+     * into groups, numbered in the order of their first member so that the
+     * source and the sink are groups 0 and 1. Fills group and weight and
+     * the requirements and dependants of every group.
+     *
+     * @return  The number of groups
+     */
+    protected int condense() {
+        Iterator<Node> nIter; // general purpose node iterator
+        Iterator<Edge> eIter; // general purpose edge iterator
+        HashSet<Long> linked; // dependencies between groups
+        int[] first,head,comp,rename; // dependencies, components, numbers
+        int[] from,to; // dependencies between groups
+        Node l; // general purpose node
+        Edge e; // general purpose edge
+        int n,groups,links,i,a,b; // counts and general purpose
+
+        original.compact(); // number the technologies densely
+        n=original.nodes.size();
+        members=new Node[n];
+        nIter=original.nodes.iterator();
+        while(nIter.hasNext()) {
+            l=nIter.next();
+            members[l.getIndex()]=l;
+        }
+        techCount=n-2;
+
+        // Gather the dependencies per dependant node
+        first=new int[n+1];
+        eIter=original.edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==original.source || e.rightNode()==original.sink)
+                continue; // not a dependency
+            first[e.leftNode().getIndex()+1]++;
+        }
+        for(i=0;i<n;i++) first[i+1]+=first[i];
+        depCount=first[n];
+        head=new int[depCount];
+        rename=new int[n];
+        System.arraycopy(first,0,rename,0,n);
+        eIter=original.edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==original.source || e.rightNode()==original.sink)
+                continue;
+            head[rename[e.leftNode().getIndex()]++]=e.rightNode().getIndex();
+        }
+        comp=strongComponents(first,head);
+
+        // Number the groups by their first member
+        Arrays.fill(rename,-1);
+        group=new int[n];
+        groups=0;
+        for(i=0;i<n;i++) {
+            if (rename[comp[i]]<0) rename[comp[i]]=groups++;
+            group[i]=rename[comp[i]];
+        }
+        merged=n-groups;
+
+        // Sum the weights of every group
+        weight=new long[groups];
+        eIter=original.edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==original.source)
+                weight[group[e.rightNode().getIndex()]]+=e.getCapacity();
+            else if (e.rightNode()==original.sink)
+                weight[group[e.leftNode().getIndex()]]-=e.getCapacity();
+        }
+
+        // Collect the distinct dependencies between groups
+        linked=new HashSet<Long>();
+        from=new int[depCount];
+        to=new int[depCount];
+        links=0;
+        for(i=0;i<n;i++) {
+            for(a=first[i];a<first[i+1];a++) {
+                b=group[head[a]];
+                if (b==group[i] || !linked.add((long)group[i]*n+b)) continue;
+                from[links]=group[i];
+                to[links++]=b;
+            }
+        }
+        inCycles=depCount-links;
+
+        reqFirst=new int[groups+1];
+        depFirst=new int[groups+1];
+        for(i=0;i<links;i++) {
+            reqFirst[from[i]+1]++;
+            depFirst[to[i]+1]++;
+        }
+        for(i=0;i<groups;i++) {
+            reqFirst[i+1]+=reqFirst[i];
+            depFirst[i+1]+=depFirst[i];
+        }
+        required=new int[links];
+        dependant=new int[links];
+        comp=new int[groups]; // reused as fill positions
+        System.arraycopy(reqFirst,0,comp,0,groups);
+        rename=new int[groups];
+        System.arraycopy(depFirst,0,rename,0,groups);
+        for(i=0;i<links;i++) {
+            required[comp[from[i]]++]=to[i];
+            dependant[rename[to[i]]++]=from[i];
+        }
+
+        return groups;
+    }
+
+    /**
+     * Fix technologies as chosen or rejected until no rule applies any
+     * more, keeping count of the requirements and dependants in the core
+     * of every group.
+     *
+     * @param groups    Number of groups
+     */
+    protected void fix(int groups) {
+        int[] reqLeft,depLeft; // requirements and dependants in the core
+        int[] size; // number of technologies in every group
+        int[] queue; // groups that may be fixable
+        int qHead,qTail,u,v,a; // queue pointers and general purpose
+
+        state=new int[groups];
+        size=new int[groups];
+        for(u=0;u<group.length;u++) size[group[u]]++;
+        reqLeft=new int[groups];
+        depLeft=new int[groups];
+        // Every group enters the queue once at first, and once more when
+        // its last requirement and when its last dependant leaves the core
+        queue=new int[3*groups];
+        qTail=0;
+        for(u=2;u<groups;u++) { // the source and sink are never fixed
+            reqLeft[u]=reqFirst[u+1]-reqFirst[u];
+            depLeft[u]=depFirst[u+1]-depFirst[u];
+            queue[qTail++]=u;
+        }
+
+        qHead=0;
+        while(qHead<qTail) {
+            u=queue[qHead++];
+            if (state[u]!=CORE) continue;
+
+            if (weight[u]>0 && reqLeft[u]==0) {
+                state[u]=CHOSEN;
+                fixed+=weight[u];
+                forcedIn+=size[u];
+                for(a=depFirst[u];a<depFirst[u+1];a++) {
+                    v=dependant[a];
+                    if (state[v]==CORE && --reqLeft[v]==0) queue[qTail++]=v;
+                }
+            } else if (weight[u]<=0 && depLeft[u]==0) {
+                state[u]=REJECTED;
+                forcedOut+=size[u];
+                for(a=reqFirst[u];a<reqFirst[u+1];a++) {
+                    v=required[a];
+                    if (state[v]==CORE && --depLeft[v]==0) queue[qTail++]=v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the reduced graph. The condensed technologies appear in the
+     * order of their first member and are named after it, and every
+     * dependency between them is kept unless the last rule of the class
+     * description drops it. Should the
+     * summed weight of a group in the core not fit the capacity of an edge,
+     * the graph is left as it is.
+     *
+     * @return  The reduced graph
+     */
+    public Graph presolve() {
+        String[] name; // name of every group
+        int[] mark; // group last seen as a requirement, per group
+        int groups,i,a,b,c,u,v; // counts and general purpose
+
+        groups=condense();
+        fix(groups);
+
+        name=new String[groups];
+        for(i=members.length-1;i>=0;i--) name[group[i]]=members[i].getName();
+        for(u=2;u<groups;u++) {
+            if (state[u]==CORE && Math.abs(weight[u])>=Integer.MAX_VALUE) {
+                reduced=original;
+                return reduced;
+            }
+        }
+
+        reduced=new Graph();
+        reduced.setBidirectional(original.bidirectional);
+        place=new int[groups];
+        for(u=2;u<groups;u++) {
+            if (state[u]!=CORE) continue;
+            place[u]=reduced.nodes.size();
+            reduced.addTechnology(name[u],(int)Math.max(weight[u],0),
+                                            (int)Math.max(-weight[u],0));
+        }
+
+        // Drop dependencies also reached through one other requirement.
+        // Requirements fixed as chosen are satisfied and not needed at all.
+        // After a dependency of u on v is added mark[v] is -2-u, so that it
+        // is never added twice.
+        mark=new int[groups];
+        Arrays.fill(mark,-1);
+        for(u=2;u<groups;u++) {
+            if (state[u]!=CORE) continue;
+            for(a=reqFirst[u];a<reqFirst[u+1];a++) {
+                if (state[required[a]]==CORE) mark[required[a]]=u;
+            }
+            for(a=reqFirst[u];a<reqFirst[u+1];a++) {
+                v=required[a];
+                if (state[v]!=CORE) continue;
+                for(b=reqFirst[v];b<reqFirst[v+1];b++) {
+                    c=required[b];
+                    if (mark[c]==u) mark[c]=-1; // found redundant
+                }
+            }
+            for(a=reqFirst[u];a<reqFirst[u+1];a++) {
+                v=required[a];
+                if (state[v]!=CORE) continue;
+                if (mark[v]==u) {
+                    reduced.addDependency(name[u],name[v]);
+                    mark[v]=-2-u;
+                } else {
+                    if (mark[v]!=-2-u) redundant++; // implied
+                }
+            }
+        }
+
+        return reduced;
+    }
+
+    /**
+     * Produces the number of nodes of the reduced graph, including the
+     * source and the sink.
+     * @return the number of nodes of the reduced graph
+     */
+    public int getNodeCount() {
+        return reduced.nodes.size();
+    }
+
+    /**
+     * Print how much every reduction removed.
+     *
+     * @param out   Stream to print to
+     */
+    public void printReport(PrintStream out) {
+        if (reduced==original) {
+            out.println("presolve: skipped, weights too large");
+            return;
+        }
+        out.println("presolve: "+techCount+" technologies, "+
+                                            depCount+" dependencies");
+        out.println("cycles: "+merged+" technologies merged, "+
+                                            inCycles+" dependencies");
+        out.println("forced in: "+forcedIn+" technologies");
+        out.println("forced out: "+forcedOut+" technologies");
+        out.println("redundant: "+redundant+
+                    " dependencies implied through one other requirement");
+        out.println("core: "+(reduced.nodes.size()-2)+" technologies, "+
+                    (reduced.edges.size()-countTerminalEdges())+
+                    " dependencies");
+    }
+
+    /**
+     * Produces the number of edges of the reduced graph connected to the
+     * source or the sink.
+     * @return the number of profit and cost edges
+     */
+    protected int countTerminalEdges() {
+        Iterator<Edge> eIter; // general purpose edge iterator
+        Edge e; // general purpose edge
+        int n; // count
+
+        n=0;
+        eIter=reduced.edges.iterator();
+        while(eIter.hasNext()) {
+            e=eIter.next();
+            if (e.leftNode()==reduced.source || e.rightNode()==reduced.sink)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Solve the reduced graph built by presolve() and print the resulting
+     * maximum revenue and the names of the chosen technologies of the
+     * original graph, in the same layout as Graph.optimise().
+     *
+     * @param engine    Engine to apply to the frozen reduced graph, null to
+     *                  use the Ford-Fulkerson algorithm of the graph itself
+     * @param scaling   true to use capacity scaling in the graph
+     */
+    public void optimise(FlowEngine engine, boolean scaling) {
+        System.out.println(solve(engine,scaling));
+    }
+
+    /**
+     * Solve the reduced graph built by presolve() and expand its result to
+     * the original graph: the revenue includes that of the technologies
+     * fixed by the presolve and the chosen technologies are those of the
+     * original graph, numbered and ordered as there. The flow, node and arc
+     * counts are those of the reduced graph that was actually solved.
+     *
+     * @param engine    Engine to apply to the frozen reduced graph, null to
+     *                  use the Ford-Fulkerson algorithm of the graph itself
+     * @param scaling   true to use capacity scaling in the graph
+     * @return          The maximum revenue and the chosen technologies
+     */
+    public SelectionResult solve(FlowEngine engine, boolean scaling) {
+        SelectionResult r; // result of the reduced graph
+        boolean[] chosen; // chosen nodes of the reduced graph
+        int[] ids; // node numbers of the chosen technologies
+        String[] label; // their names
+        long start; // time the solve started
+        int i,k,u; // general purpose counters and group
+
+        if (reduced==original) {
+            if (engine==null) return original.solve(scaling);
+            return new Optimiser(engine).solve(original.freeze());
+        }
+
+        start=System.nanoTime();
+        if (engine==null) r=reduced.solve(scaling);
+        else r=new Optimiser(engine).solve(reduced.freeze());
+        chosen=new boolean[reduced.nodes.size()];
+        for(i=0;i<r.getCount();i++) chosen[r.getId(i)]=true;
+
+        k=0;
+        for(i=2;i<members.length;i++) {
+            u=group[i];
+            if (state[u]==CHOSEN || (state[u]==CORE && chosen[place[u]])) k++;
+        }
+        ids=new int[k];
+        label=new String[k];
+        k=0;
+        for(i=2;i<members.length;i++) {
+            u=group[i];
+            if (state[u]==CHOSEN || (state[u]==CORE && chosen[place[u]])) {
+                ids[k]=members[i].getIndex();
+                label[k++]=members[i].getName();
+            }
+        }
+
+        return new SelectionResult(r.getRevenue()+fixed,ids,label,r.getFlow(),
+                r.getNodeCount(),r.getArcCount(),System.nanoTime()-start);
+    }
+}
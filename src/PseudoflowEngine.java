@@ -0,0 +1,430 @@
+// File: PseudoflowEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+
+/**
+ * Hochbaum's pseudoflow algorithm (lowest label variant) on the arrays of a
+ * FlowNetwork. It is made for exactly the shape of network the Graph builds
+ * for a maximum weight closure: every arc leaving the source and entering
+ * the sink is saturated at the start, which leaves each technology with its
+ * net value (profit minus cost) as excess or deficit. Technologies with only
+ * a profit edge start out as strong roots, those with only a cost edge as
+ * weak roots, and most of them never take part in more than a few merges.
+ * <P>
+ * The nodes are kept in a forest of trees, each rooted at the node holding
+ * the excess of its tree. A strong tree (positive excess) with the lowest
+ * label looks for a residual arc to a weak node one label lower, hangs
+ * itself below that node and pushes its excess towards the weak root,
+ * splitting the tree wherever an arc saturates. If no such arc exists its
+ * nodes are relabeled. Once no node is left one label below the lowest
+ * strong label the minimal cut is known. Deficits are then removed from the
+ * sink arcs, leaving a maximum preflow from which FlowNetwork.findCut()
+ * reads the cut.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class PseudoflowEngine implements FlowEngine {
+    /**
+     * The label of every node; the source and sink are labelled -1 so that
+     * they never take part in a merge.
+     */
+    protected int[] label;
+    /**
+     * The number of nodes with each label.
+     */
+    protected int[] labelCount;
+    /**
+     * The flow entering every node minus the flow leaving it. Only roots
+     * have a non zero excess.
+     */
+    protected long[] excess;
+    /**
+     * The parent of every node in its tree, -1 for roots.
+     */
+    protected int[] parent;
+    /**
+     * The arc leading from every node to its parent.
+     */
+    protected int[] parentArc;
+    /**
+     * The first child of every node, -1 if there is none.
+     */
+    protected int[] childFirst;
+    /**
+     * The next child of the same parent.
+     */
+    protected int[] siblingNext;
+    /**
+     * The previous child of the same parent.
+     */
+    protected int[] siblingPrev;
+    /**
+     * The next child to visit while scanning a strong tree.
+     */
+    protected int[] nextScan;
+    /**
+     * The next arc to try when looking for a weak node.
+     */
+    protected int[] nextArc;
+    /**
+     * The first and last strong root for every label, -1 if there is none.
+     */
+    protected int[] bucketFirst,bucketLast;
+    /**
+     * The next strong root with the same label.
+     */
+    protected int[] bucketNext;
+    /**
+     * The lowest label which may have strong roots.
+     */
+    protected int lowest;
+
+    /**
+     * Make sure the work arrays fit the given network. They are kept
+     * between calls so that solving networks of the same size repeatedly
+     * does not allocate.
+     *
+     * @param net   Network about to be solved
+     */
+    protected void prepare(FlowNetwork net) {
+        int n; // number of nodes
+
+        n=net.nodeCount;
+        if (label==null || label.length<n) {
+            label=new int[n];
+            labelCount=new int[n+2];
+            excess=new long[n];
+            parent=new int[n];
+            parentArc=new int[n];
+            childFirst=new int[n];
+            siblingNext=new int[n];
+            siblingPrev=new int[n];
+            nextScan=new int[n];
+            nextArc=new int[n];
+            bucketFirst=new int[n+2];
+            bucketLast=new int[n+2];
+            bucketNext=new int[n];
+        }
+        Arrays.fill(labelCount,0);
+        Arrays.fill(bucketFirst,-1);
+        Arrays.fill(bucketLast,-1);
+    }
+
+    /**
+     * Append a strong root to the bucket of its label.
+     *
+     * @param v     Strong root to add
+     */
+    protected void addStrongRoot(int v) {
+        int d; // label of v
+
+        d=label[v];
+        bucketNext[v]=-1;
+        if (bucketLast[d]<0) bucketFirst[d]=v;
+        else bucketNext[bucketLast[d]]=v;
+        bucketLast[d]=v;
+        if (d<lowest) lowest=d;
+    }
+
+    /**
+     * Make a node the first child of another.
+     *
+     * @param p     New parent
+     * @param c     New child, which must be a root
+     * @param a     Arc leading from the child to the parent
+     */
+    protected void addChild(int p, int c, int a) {
+        parent[c]=p;
+        parentArc[c]=a;
+        siblingPrev[c]=-1;
+        siblingNext[c]=childFirst[p];
+        if (childFirst[p]>=0) siblingPrev[childFirst[p]]=c;
+        childFirst[p]=c;
+    }
+
+    /**
+     * Cut a node loose from its parent, making it a root.
+     *
+     * @param c     Child to remove
+     */
+    protected void removeChild(int c) {
+        int p; // parent of c
+
+        p=parent[c];
+        if (nextScan[p]==c) nextScan[p]=siblingNext[c];
+        if (siblingPrev[c]>=0) siblingNext[siblingPrev[c]]=siblingNext[c];
+        else childFirst[p]=siblingNext[c];
+        if (siblingNext[c]>=0) siblingPrev[siblingNext[c]]=siblingPrev[c];
+        parent[c]=-1;
+    }
+
+    /**
+     * Saturate every arc leaving the source or entering the sink and turn
+     * every other node into a singleton tree. Nodes left with excess are the
+     * first strong roots.
+     *
+     * @param net   Network being solved
+     */
+    protected void initialise(FlowNetwork net) {
+        int[] first,head,mate; // arrays of the network
+        long[] residual; // residual capacities of the network
+        long d; // amount saturated
+        int u,a; // general purpose node and arc
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        residual=net.residual;
+        lowest=0;
+
+        for(u=0;u<net.nodeCount;u++) {
+            excess[u]=0;
+            parent[u]=-1;
+            childFirst[u]=-1;
+            nextScan[u]=-1;
+            nextArc[u]=first[u];
+            label[u]=0;
+        }
+        label[net.source]=-1;
+        label[net.sink]=-1;
+        labelCount[0]=net.nodeCount-2;
+
+        for(u=0;u<net.nodeCount;u++) {
+            for(a=first[u];a<first[u+1];a++) {
+                if (u!=net.source && head[a]!=net.sink) continue;
+                d=residual[a];
+                residual[a]=0;
+                residual[mate[a]]+=d;
+                excess[u]-=d;
+                excess[head[a]]+=d;
+            }
+        }
+
+        for(u=0;u<net.nodeCount;u++) {
+            if (u!=net.source && u!=net.sink && excess[u]>0) addStrongRoot(u);
+        }
+    }
+
+    /**
+     * Take the next strong root with the lowest label out of its bucket.
+     * Roots still at label 0 are first lifted to label 1.
+     *
+     * @param n     Number of nodes in the network
+     * @return      The root, or -1 if the cut has been found: either no
+     *              strong root is left or no node has the label just below
+     *              the lowest strong label (a gap)
+     */
+    protected int nextStrongRoot(int n) {
+        int v,i; // general purpose node and label
+
+        if (lowest==0) {
+            while((v=bucketFirst[0])>=0) {
+                bucketFirst[0]=bucketNext[v];
+                labelCount[0]--;
+                label[v]=1;
+                labelCount[1]++;
+                addStrongRoot(v);
+            }
+            bucketLast[0]=-1;
+            lowest=1;
+        }
+
+        for(i=lowest;i<=n;i++) {
+            if ((v=bucketFirst[i])<0) continue;
+            lowest=i;
+            if (labelCount[i-1]==0) return -1; // gap
+            bucketFirst[i]=bucketNext[v];
+            if (bucketFirst[i]<0) bucketLast[i]=-1;
+            return v;
+        }
+
+        lowest=n+1;
+        return -1;
+    }
+
+    /**
+     * Look for a residual arc from a strong node to a node one label lower,
+     * which is necessarily weak.
+     *
+     * @param net   Network being solved
+     * @param u     Strong node to scan
+     * @return      The arc found, or -1 if there is none
+     */
+    protected int findWeakNode(FlowNetwork net, int u) {
+        int a,end,d; // arc, end of the arcs of u and wanted label
+
+        d=label[u]-1;
+        end=net.first[u+1];
+        for(a=nextArc[u];a<end;a++) {
+            if (net.residual[a]>0 && label[net.head[a]]==d) {
+                nextArc[u]=a;
+                return a;
+            }
+        }
+        nextArc[u]=end;
+
+        return -1;
+    }
+
+    /**
+     * Skip the children of a node with a different label. If no child with
+     * the same label is left, the node itself is relabeled.
+     *
+     * @param net   Network being solved
+     * @param u     Node whose children are checked
+     */
+    protected void checkChildren(FlowNetwork net, int u) {
+        for(;nextScan[u]>=0;nextScan[u]=siblingNext[nextScan[u]]) {
+            if (label[nextScan[u]]==label[u]) return;
+        }
+
+        labelCount[label[u]]--;
+        label[u]++;
+        labelCount[label[u]]++;
+        nextArc[u]=net.first[u];
+    }
+
+    /**
+     * Hang the strong tree containing a node below a weak node, reversing
+     * the path from the node to its old root so that the node becomes the
+     * child of the weak node.
+     *
+     * @param net   Network being solved
+     * @param w     Weak node that becomes the new parent
+     * @param u     Strong node
+     * @param a     Residual arc from u to w
+     */
+    protected void merge(FlowNetwork net, int w, int u, int a) {
+        int p,oldParent,oldArc; // new parent, old parent and its arc
+
+        p=w;
+        while(parent[u]>=0) {
+            oldParent=parent[u];
+            oldArc=parentArc[u];
+            removeChild(u);
+            addChild(p,u,a);
+            p=u;
+            u=oldParent;
+            a=net.mate[oldArc];
+        }
+        addChild(p,u,a);
+    }
+
+    /**
+     * Push the excess of a root up along the path to the root of the tree it
+     * now hangs in. Where an arc has too little residual capacity it is
+     * saturated and the tree is split there, the node below it becoming a
+     * strong root with the excess that could not be pushed.
+     *
+     * @param net   Network being solved
+     * @param r     Root whose excess is pushed
+     */
+    protected void pushExcess(FlowNetwork net, int r) {
+        long d,before; // amount pushed and excess of the parent before
+        int u,p,a; // current node, its parent and the arc to it
+
+        before=1;
+        for(u=r;excess[u]>0 && parent[u]>=0;u=p) {
+            p=parent[u];
+            a=parentArc[u];
+            before=excess[p];
+            d=Math.min(excess[u],net.residual[a]);
+            net.residual[a]-=d;
+            net.residual[net.mate[a]]+=d;
+            excess[u]-=d;
+            excess[p]+=d;
+            if (excess[u]>0) {
+                // The arc is saturated, split the tree here
+                removeChild(u);
+                addStrongRoot(u);
+            }
+        }
+
+        // A weak root that received enough becomes strong
+        if (excess[u]>0 && before<=0) addStrongRoot(u);
+    }
+
+    /**
+     * Scan the nodes of a strong tree that have the label of its root,
+     * looking for a merge with a weak node. Nodes without such a merger are
+     * relabeled bottom up; if none of them yields a merger the root is put
+     * back with its new label.
+     *
+     * @param net   Network being solved
+     * @param r     Strong root to process
+     */
+    protected void processRoot(FlowNetwork net, int r) {
+        int u,c,a; // current node, child and merger arc
+
+        u=r;
+        nextScan[r]=childFirst[r];
+        if ((a=findWeakNode(net,r))>=0) {
+            merge(net,net.head[a],r,a);
+            pushExcess(net,r);
+            return;
+        }
+        checkChildren(net,r);
+
+        while(u>=0) {
+            while(nextScan[u]>=0) {
+                c=nextScan[u];
+                nextScan[u]=siblingNext[c];
+                u=c;
+                nextScan[u]=childFirst[u];
+                if ((a=findWeakNode(net,u))>=0) {
+                    merge(net,net.head[a],u,a);
+                    pushExcess(net,r);
+                    return;
+                }
+                checkChildren(net,u);
+            }
+            if ((u=parent[u])>=0) checkChildren(net,u);
+        }
+
+        addStrongRoot(r);
+    }
+
+    /**
+     * Find the minimal cut with the pseudoflow algorithm and turn the
+     * pseudoflow into a maximum preflow by returning every deficit to the
+     * sink arcs of its node.
+     *
+     * @param net   Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork net) {
+        long flow,d; // flow into the sink and amount returned
+        int u,a; // general purpose node and arc
+
+        prepare(net);
+        initialise(net);
+        while((u=nextStrongRoot(net.nodeCount))>=0) {
+            processRoot(net,u);
+        }
+
+        // A deficit only ever shrinks, so the sink arcs of a node can
+        // always take it back. The deficit of the source is the flow it
+        // sent, which stays where it is, also over an arc to the sink.
+        for(u=0;u<net.nodeCount;u++) {
+            if (u==net.source) continue;
+            for(a=net.first[u];excess[u]<0 && a<net.first[u+1];a++) {
+                if (net.head[a]!=net.sink) continue;
+                d=Math.min(-excess[u],net.capacity[a]-net.residual[a]);
+                net.residual[a]+=d;
+                net.residual[net.mate[a]]-=d;
+                excess[u]+=d;
+            }
+        }
+
+        flow=0;
+        for(a=net.first[net.sink];a<net.first[net.sink+1];a++)
+            flow+=net.residual[a]-net.capacity[a];
+
+        return flow;
+    }
+}
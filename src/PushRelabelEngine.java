@@ -0,0 +1,351 @@
+// File: PushRelabelEngine.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+
+/**
+ * The push-relabel maximum flow algorithm on the arrays of a FlowNetwork,
+ * always discharging an active node with the highest label. Two heuristics
+ * keep the labels close to the real distances: a global relabeling by a
+ * breadth first search backwards from the sink whenever enough relabel work
+ * has been done, and the gap heuristic which lifts every node above an empty
+ * label out of reach at once.
+ * <P>
+ * The first phase computes a maximum preflow, which already determines the
+ * minimal cut. Unless the engine runs in cut only mode, a second phase with
+ * the roles of source and sink swapped returns the excess that could not
+ * reach the sink to the source, leaving a proper flow.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class PushRelabelEngine implements FlowEngine {
+    /**
+     * A global relabeling is done once the relabel work exceeds this many
+     * times the node count plus the arc count.
+     */
+    protected static final int GLOBAL_FACTOR=6;
+    /**
+     * Stop after the first phase; the residual capacities then describe a
+     * maximum preflow instead of a maximum flow.
+     */
+    protected boolean cutOnly;
+    /**
+     * The (distance) label of every node.
+     */
+    protected int[] label;
+    /**
+     * The flow entering every node that has not left it yet.
+     */
+    protected long[] excess;
+    /**
+     * The next arc to try for each node.
+     */
+    protected int[] current;
+    /**
+     * The first active node for every label, -1 if there is none.
+     */
+    protected int[] activeFirst;
+    /**
+     * The next active node with the same label.
+     */
+    protected int[] activeNext;
+    /**
+     * The first node (active or not) for every label, -1 if there is none.
+     */
+    protected int[] allFirst;
+    /**
+     * The next node with the same label.
+     */
+    protected int[] allNext;
+    /**
+     * The previous node with the same label.
+     */
+    protected int[] allPrev;
+    /**
+     * The queue used by the global relabeling.
+     */
+    protected int[] queue;
+    /**
+     * The highest label which may have active nodes.
+     */
+    protected int maxActive;
+    /**
+     * The highest label which may have nodes.
+     */
+    protected int maxLabel;
+    /**
+     * Relabel work done since the last global relabeling.
+     */
+    protected long work;
+
+    /**
+     * Constructor for an engine computing a proper maximum flow.
+     */
+    public PushRelabelEngine() {
+        this(false);
+    }
+
+    /**
+     * Constructor for the PushRelabelEngine class.
+     *
+     * @param c     true to stop after the first phase (cut only mode)
+     */
+    public PushRelabelEngine(boolean c) {
+        cutOnly=c;
+    }
+
+    /**
+     * Make sure the work arrays fit the given network. They are kept
+     * between calls so that solving networks of the same size repeatedly
+     * does not allocate.
+     *
+     * @param net   Network about to be solved
+     */
+    protected void prepare(FlowNetwork net) {
+        int n; // number of nodes
+
+        n=net.nodeCount;
+        if (label==null || label.length<n) {
+            label=new int[n];
+            excess=new long[n];
+            current=new int[n];
+            activeFirst=new int[n];
+            activeNext=new int[n];
+            allFirst=new int[n];
+            allNext=new int[n];
+            allPrev=new int[n];
+            queue=new int[n];
+        }
+        Arrays.fill(excess,0,n,0);
+    }
+
+    /**
+     * Add a node to the list of active nodes with its label.
+     *
+     * @param v     Node to activate
+     */
+    protected void activate(int v) {
+        activeNext[v]=activeFirst[label[v]];
+        activeFirst[label[v]]=v;
+        if (label[v]>maxActive) maxActive=label[v];
+    }
+
+    /**
+     * Add a node to the list of all nodes with its label.
+     *
+     * @param v     Node to add
+     */
+    protected void addLabelled(int v) {
+        int d; // label of v
+
+        d=label[v];
+        allPrev[v]=-1;
+        allNext[v]=allFirst[d];
+        if (allFirst[d]>=0) allPrev[allFirst[d]]=v;
+        allFirst[d]=v;
+        if (d>maxLabel) maxLabel=d;
+    }
+
+    /**
+     * Remove a node from the list of all nodes with its label.
+     *
+     * @param v     Node to remove
+     */
+    protected void removeLabelled(int v) {
+        if (allPrev[v]>=0) allNext[allPrev[v]]=allNext[v];
+        else allFirst[label[v]]=allNext[v];
+        if (allNext[v]>=0) allPrev[allNext[v]]=allPrev[v];
+    }
+
+    /**
+     * Set every label to the exact residual distance to the target by a
+     * breadth first search backwards from it, and rebuild the label lists.
+     * Nodes that can not reach the target get the label n and drop out of
+     * the current phase.
+     *
+     * @param net       Network being solved
+     * @param target    Node the excess is moved towards
+     * @param other     The opposite terminal, never labelled below n
+     */
+    protected void globalRelabel(FlowNetwork net, int target, int other) {
+        int[] first,head,mate; // arrays of the network
+        long[] residual; // residual capacities of the network
+        int n,qHead,qTail; // node count and queue pointers
+        int u,v,a; // general purpose nodes and arc
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        residual=net.residual;
+        n=net.nodeCount;
+
+        Arrays.fill(label,0,n,n);
+        label[target]=0;
+        queue[0]=target;
+        qHead=0;
+        qTail=1;
+        while(qHead<qTail) {
+            u=queue[qHead++];
+            for(a=first[u];a<first[u+1];a++) {
+                v=head[a];
+                // v can push to u over the reverse of arc a
+                if (label[v]==n && v!=other && residual[mate[a]]>0) {
+                    label[v]=label[u]+1;
+                    queue[qTail++]=v;
+                }
+            }
+        }
+
+        Arrays.fill(activeFirst,0,n,-1);
+        Arrays.fill(allFirst,0,n,-1);
+        maxActive=-1;
+        maxLabel=0;
+        for(v=0;v<n;v++) {
+            current[v]=first[v];
+            if (v==target || v==other || label[v]>=n) continue;
+            addLabelled(v);
+            if (excess[v]>0) activate(v);
+        }
+        work=0;
+    }
+
+    /**
+     * Raise the label of a node to one more than the lowest label it has a
+     * residual arc to. When the node was the last one with its old label,
+     * no node above that label can reach the target any more and all of
+     * them are lifted to n (the gap heuristic).
+     *
+     * @param net   Network being solved
+     * @param u     Node to relabel
+     */
+    protected void relabel(FlowNetwork net, int u) {
+        int n,old,d,k,v,a; // node count, labels and general purpose
+
+        n=net.nodeCount;
+        old=label[u];
+        d=n;
+        for(a=net.first[u];a<net.first[u+1];a++) {
+            if (net.residual[a]>0 && label[net.head[a]]+1<d)
+                d=label[net.head[a]]+1;
+        }
+        work+=12+net.first[u+1]-net.first[u];
+
+        removeLabelled(u);
+        if (allFirst[old]<0) {
+            // Gap: nothing above old can reach the target any more
+            for(k=old+1;k<=maxLabel;k++) {
+                for(v=allFirst[k];v>=0;v=allNext[v]) label[v]=n;
+                allFirst[k]=-1;
+            }
+            maxLabel=old-1;
+            label[u]=n;
+            return;
+        }
+
+        label[u]=d;
+        current[u]=net.first[u];
+        if (d<n) addLabelled(u);
+    }
+
+    /**
+     * Push the excess of a node over admissible arcs (those going exactly
+     * one label down) until it is gone or the node is lifted out of reach.
+     *
+     * @param net       Network being solved
+     * @param u         Node to discharge
+     * @param target    Node the excess is moved towards
+     * @param other     The opposite terminal
+     */
+    protected void discharge(FlowNetwork net, int u, int target, int other) {
+        int[] first,head,mate; // arrays of the network
+        long[] residual; // residual capacities of the network
+        long d; // amount pushed
+        int a,v; // general purpose arc and node
+
+        first=net.first;
+        head=net.head;
+        mate=net.mate;
+        residual=net.residual;
+
+        while(excess[u]>0) {
+            a=current[u];
+            if (a==first[u+1]) {
+                relabel(net,u);
+                if (label[u]>=net.nodeCount) return;
+                continue;
+            }
+
+            v=head[a];
+            if (residual[a]>0 && label[u]==label[v]+1) {
+                d=Math.min(excess[u],residual[a]);
+                residual[a]-=d;
+                residual[mate[a]]+=d;
+                excess[u]-=d;
+                if (excess[v]==0 && v!=target && v!=other) activate(v);
+                excess[v]+=d;
+            } else {
+                current[u]++;
+            }
+        }
+    }
+
+    /**
+     * Move as much excess as possible to the target, discharging the active
+     * node with the highest label first.
+     *
+     * @param net       Network being solved
+     * @param target    Node the excess is moved towards
+     * @param other     The opposite terminal
+     */
+    protected void phase(FlowNetwork net, int target, int other) {
+        long limit; // relabel work allowed between global relabelings
+        int u; // general purpose node
+
+        limit=(long)GLOBAL_FACTOR*net.nodeCount+net.arcCount;
+        globalRelabel(net,target,other);
+        while(maxActive>=0) {
+            u=activeFirst[maxActive];
+            if (u<0) {
+                maxActive--;
+                continue;
+            }
+            activeFirst[maxActive]=activeNext[u];
+            if (label[u]!=maxActive || excess[u]==0) continue; // stale entry
+
+            discharge(net,u,target,other);
+            if (label[u]<net.nodeCount && excess[u]>0) activate(u);
+            if (work>limit) globalRelabel(net,target,other);
+        }
+    }
+
+    /**
+     * Saturate all arcs leaving the source, move the excess to the sink and,
+     * unless in cut only mode, return what is left to the source.
+     *
+     * @param net   Network to push the flow through
+     * @return      The value of the flow added by this call
+     */
+    public long maxFlow(FlowNetwork net) {
+        long d; // amount pushed
+        int a,s; // general purpose arc and the source
+
+        prepare(net);
+        s=net.source;
+        for(a=net.first[s];a<net.first[s+1];a++) {
+            d=net.residual[a];
+            if (d==0 || net.head[a]==s) continue;
+            net.residual[a]=0;
+            net.residual[net.mate[a]]+=d;
+            excess[net.head[a]]+=d;
+        }
+
+        phase(net,net.sink,net.source);
+        if (!cutOnly) phase(net,net.source,net.sink);
+
+        return excess[net.sink];
+    }
+}
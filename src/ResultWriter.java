@@ -0,0 +1,313 @@
+// File: ResultWriter.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Writes SelectionResults to a stream through a byte buffer that is reused
+ * for every result, so that even a result with hundreds of thousands of
+ * names costs a handful of writes to the stream instead of one print per
+ * name. Plain ASCII characters, by far the most common, are copied into the
+ * buffer directly.
+ * <P>
+ * TEXT and NAMES encode the names in the default character set of the
+ * platform, like the System.out.print() calls they replace; a character set
+ * that does not write ASCII as ASCII, such as UTF-16, is replaced by UTF-8.
+ * JSON is always UTF-8, as JSON requires.
+ * <P>
+ * Four formats are available:
+ * <UL>
+ * <LI>TEXT, the layout of Graph.optimise(): the revenue followed by the
+ *     names of the chosen technologies on one line, separated by spaces.
+ * <LI>NAMES, the names of the chosen technologies, one per line.
+ * <LI>JSON, a single line {"revenue":r,"count":k,"ids":[...],
+ *     "chosen":[...]} with the node numbers and names.
+ * <LI>BINARY, the revenue as a long, the count as an int and the node
+ *     numbers as ints, all little endian like a Snapshot.
+ * </UL>
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class ResultWriter {
+    /**
+     * Revenue and names on one line.
+     */
+    public static final int TEXT=0;
+    /**
+     * One name per line.
+     */
+    public static final int NAMES=1;
+    /**
+     * A JSON object per result.
+     */
+    public static final int JSON=2;
+    /**
+     * Revenue, count and node numbers in binary.
+     */
+    public static final int BINARY=3;
+    /**
+     * The format names accepted by format(), in the order of the constants.
+     */
+    protected static final String[] FORMATS={"text","names","json","binary"};
+    /**
+     * Size of the buffer.
+     */
+    protected static final int SIZE=1<<16;
+    /**
+     * The stream written to.
+     */
+    protected OutputStream out;
+    /**
+     * The format written.
+     */
+    protected int format;
+    /**
+     * Bytes waiting to be written.
+     */
+    protected byte[] buf;
+    /**
+     * Number of bytes in buf.
+     */
+    protected int count;
+    /**
+     * The character set used for names that are not plain ASCII.
+     */
+    protected Charset charset;
+
+    /**
+     * Constructor for a ResultWriter using the character set of the format.
+     *
+     * @param o     Stream to write to
+     * @param f     Format to write, one of TEXT, NAMES, JSON and BINARY
+     * @throws IllegalArgumentException Thrown when the format is unknown.
+     */
+    public ResultWriter(OutputStream o, int f) throws IllegalArgumentException {
+        this(o,f,(f==JSON)?(FlowNetwork.UTF8):(Charset.defaultCharset()));
+    }
+
+    /**
+     * Constructor for the ResultWriter class.
+     *
+     * @param o     Stream to write to
+     * @param f     Format to write, one of TEXT, NAMES, JSON and BINARY
+     * @param cs    Character set of the names, replaced by UTF-8 when it
+     *              does not write ASCII as ASCII
+     * @throws IllegalArgumentException Thrown when the format is unknown.
+     */
+    public ResultWriter(OutputStream o, int f, Charset cs)
+                                            throws IllegalArgumentException {
+        byte[] b; // the ASCII characters encoded in cs
+        int i; // general purpose counter
+
+        if (f<TEXT || f>BINARY)
+            throw new IllegalArgumentException(
+                    "Attempted to use an unknown output format.");
+        out=o;
+        format=f;
+        buf=new byte[SIZE];
+        charset=FlowNetwork.UTF8;
+        b=new byte[0x80];
+        for(i=0;i<0x80;i++) b[i]=(byte)i;
+        if (Arrays.equals(new String(b,FlowNetwork.UTF8).getBytes(cs),b))
+            charset=cs;
+    }
+
+    /**
+     * Translate the name of a format into its constant.
+     *
+     * @param name  Name of the format as given on the command line
+     * @return      The format constant
+     * @throws IllegalArgumentException Thrown when the name is unknown.
+     */
+    public static int format(String name) throws IllegalArgumentException {
+        int f; // general purpose format
+
+        for(f=TEXT;f<=BINARY;f++) {
+            if (FORMATS[f].equals(name)) return f;
+        }
+        throw new IllegalArgumentException("Unknown format '"+name+
+                                "', expected one of: text names json binary");
+    }
+
+    /**
+     * Make room for the given number of bytes in the buffer, writing its
+     * contents to the stream when needed.
+     *
+     * @param n     Number of bytes needed, at most SIZE
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void room(int n) throws IOException {
+        if (count+n>buf.length) {
+            out.write(buf,0,count);
+            count=0;
+        }
+    }
+
+    /**
+     * Append a single ASCII character.
+     *
+     * @param c     Character to append
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void put(char c) throws IOException {
+        room(1);
+        buf[count++]=(byte)c;
+    }
+
+    /**
+     * Append the decimal digits of a number.
+     *
+     * @param v     Number to append
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void put(long v) throws IOException {
+        int i,j; // ends of the digits
+        byte b; // for reversing the digits
+
+        room(20);
+        if (v==Long.MIN_VALUE) {
+            put(Long.toString(v),false);
+            return;
+        }
+        if (v<0) {
+            buf[count++]='-';
+            v=-v;
+        }
+        i=count;
+        do {
+            buf[count++]=(byte)('0'+v%10);
+            v/=10;
+        } while(v>0);
+        for(j=count-1;i<j;i++,j--) {
+            b=buf[i];
+            buf[i]=buf[j];
+            buf[j]=b;
+        }
+    }
+
+    /**
+     * Append a number as little endian bytes.
+     *
+     * @param v     Number to append
+     * @param n     Number of bytes, 4 for an int and 8 for a long
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void putBinary(long v, int n) throws IOException {
+        int i; // general purpose counter
+
+        room(n);
+        for(i=0;i<n;i++) buf[count++]=(byte)(v>>>(8*i));
+    }
+
+    /**
+     * Append a name in the character set of the writer, optionally escaped
+     * for a JSON string.
+     *
+     * @param s         Name to append
+     * @param escape    true to escape quotes, backslashes and control
+     *                  characters as JSON requires
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    protected void put(String s, boolean escape) throws IOException {
+        byte[] b; // encoded characters
+        int i,k,n; // general purpose counters and length
+        char c; // general purpose character
+
+        n=s.length();
+        for(i=0;i<n;i++) {
+            c=s.charAt(i);
+            if (escape && (c=='"' || c=='\\')) {
+                room(2);
+                buf[count++]='\\';
+                buf[count++]=(byte)c;
+            } else if (escape && c<0x20) {
+                room(6);
+                buf[count++]='\\';
+                buf[count++]='u';
+                buf[count++]='0';
+                buf[count++]='0';
+                buf[count++]=(byte)Character.forDigit(c>>4,16);
+                buf[count++]=(byte)Character.forDigit(c&15,16);
+            } else if (c<0x80) {
+                room(1);
+                buf[count++]=(byte)c;
+            } else {
+                // Encode a surrogate pair together
+                k=(Character.isHighSurrogate(c) && i+1<n)?(2):(1);
+                b=s.substring(i,i+k).getBytes(charset);
+                room(b.length);
+                System.arraycopy(b,0,buf,count,b.length);
+                count+=b.length;
+                i+=k-1;
+            }
+        }
+    }
+
+    /**
+     * Write a result in the format of this writer. The bytes may stay in the
+     * buffer until flush() is called.
+     *
+     * @param r     Result to write
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    public void write(SelectionResult r) throws IOException {
+        int i; // general purpose counter
+
+        switch(format) {
+        case TEXT:
+            put(r.getRevenue());
+            for(i=0;i<r.getCount();i++) {
+                put(' ');
+                put(r.getNames().get(i),false);
+            }
+            put('\n');
+            break;
+        case NAMES:
+            for(i=0;i<r.getCount();i++) {
+                put(r.getNames().get(i),false);
+                put('\n');
+            }
+            break;
+        case JSON:
+            put("{\"revenue\":",false);
+            put(r.getRevenue());
+            put(",\"count\":",false);
+            put(r.getCount());
+            put(",\"ids\":[",false);
+            for(i=0;i<r.getCount();i++) {
+                if (i>0) put(',');
+                put(r.getId(i));
+            }
+            put("],\"chosen\":[",false);
+            for(i=0;i<r.getCount();i++) {
+                if (i>0) put(',');
+                put('"');
+                put(r.getNames().get(i),true);
+                put('"');
+            }
+            put("]}\n",false);
+            break;
+        default:
+            putBinary(r.getRevenue(),8);
+            putBinary(r.getCount(),4);
+            for(i=0;i<r.getCount();i++) putBinary(r.getId(i),4);
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the stream and flush it.
+     *
+     * @throws IOException Thrown when the stream can not be written.
+     */
+    public void flush() throws IOException {
+        out.write(buf,0,count);
+        count=0;
+        out.flush();
+    }
+}
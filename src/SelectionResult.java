@@ -0,0 +1,163 @@
+// File: SelectionResult.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+
+/**
+ * The outcome of one solve by the Optimiser: the maximum revenue, the
+ * technologies to develop for it and some statistics of the solve. A
+ * result never changes once made, so it may be kept and shared between
+ * threads freely.
+ * <P>
+ * Technologies are identified by their node number in the network that was
+ * solved, which is also what FlowNetwork.getName() expects. For a network
+ * made by Graph.freeze() the technologies are numbered from 2 on in the
+ * order of the configuration file.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class SelectionResult {
+    /**
+     * The maximum net revenue.
+     */
+    protected final long revenue;
+    /**
+     * The node numbers of the chosen technologies in increasing order.
+     */
+    protected final int[] ids;
+    /**
+     * The names of the chosen technologies in the same order.
+     */
+    protected final List<String> names;
+    /**
+     * The value of the maximum flow, which is the sum of all profits minus
+     * the revenue.
+     */
+    protected final long flow;
+    /**
+     * Number of nodes in the network solved.
+     */
+    protected final int nodeCount;
+    /**
+     * Number of arcs in the network solved.
+     */
+    protected final int arcCount;
+    /**
+     * Time spent solving in nanoseconds.
+     */
+    protected final long nanos;
+
+    /**
+     * Constructor for the SelectionResult class. The arrays are taken over,
+     * the caller must not change them afterwards.
+     *
+     * @param r     Maximum net revenue
+     * @param i     Node numbers of the chosen technologies
+     * @param n     Names of the chosen technologies
+     * @param f     Value of the maximum flow
+     * @param v     Number of nodes in the network
+     * @param a     Number of arcs in the network
+     * @param t     Time spent solving in nanoseconds
+     */
+    protected SelectionResult(long r, int[] i, String[] n, long f, int v,
+                                                            int a, long t) {
+        revenue=r;
+        ids=i;
+        names=Collections.unmodifiableList(Arrays.asList(n));
+        flow=f;
+        nodeCount=v;
+        arcCount=a;
+        nanos=t;
+    }
+
+    /**
+     * Produces the maximum net revenue
+     * @return the revenue
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Produces the number of chosen technologies
+     * @return the number of technologies to develop
+     */
+    public int getCount() {
+        return ids.length;
+    }
+
+    /**
+     * Produces the node numbers of the chosen technologies
+     * @return a copy of the node numbers in increasing order
+     */
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * Produces the node number of one chosen technology
+     * @param i the position among the chosen technologies
+     * @return the node number
+     */
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Produces the names of the chosen technologies
+     * @return an unmodifiable list in the order of getIds()
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Produces the value of the maximum flow
+     * @return the sum of all profits minus the revenue
+     */
+    public long getFlow() {
+        return flow;
+    }
+
+    /**
+     * Produces the number of nodes of the network solved
+     * @return the node count, including source and sink
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Produces the number of arcs of the network solved
+     * @return the arc count, twice the number of edges
+     */
+    public int getArcCount() {
+        return arcCount;
+    }
+
+    /**
+     * Produces the time spent solving
+     * @return the time in nanoseconds
+     */
+    public long getSolveTime() {
+        return nanos;
+    }
+
+    /**
+     * Produces the result in the layout printed by Graph.optimise(): the
+     * revenue followed by the names of the chosen technologies.
+     * @return the revenue and names separated by spaces
+     */
+    public String toString() {
+        StringBuilder out; // collected output
+
+        out=new StringBuilder();
+        out.append(revenue);
+        for(String name : names) out.append(' ').append(name);
+        return out.toString();
+    }
+}
@@ -0,0 +1,357 @@
+// File: Snapshot.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Stores a FlowNetwork in a binary file that can be loaded again without
+ * parsing, so that a large configuration only has to be read as text once.
+ * The file is memory-mapped and its arrays are copied into the arrays of
+ * the network in bulk; apart from those arrays nothing is allocated per
+ * node, the names stay UTF-8 bytes until they are printed.
+ * <P>
+ * All numbers are little endian. The file starts with a header of eight
+ * ints: MAGIC, VERSION, the node count n, the arc count m, the source, the
+ * sink, the size of the name bytes p and 0. It is followed by the arrays
+ * first (n+1 ints), head (m ints), mate (m ints), capacity (m longs),
+ * nameStart (n+1 ints) and the p name bytes, without any gaps. A reader
+ * rejects files with a different magic number or version.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class Snapshot {
+    /**
+     * The first four bytes of every snapshot, "DLFZ" when read as text.
+     */
+    public static final int MAGIC=0x5a464c44;
+    /**
+     * The version of the file layout written by this class.
+     */
+    public static final int VERSION=1;
+    /**
+     * Size of the header in bytes.
+     */
+    protected static final int HEADER=32;
+    /**
+     * The largest part of a file mapped into memory at once.
+     */
+    protected static final int WINDOW=1<<30;
+
+    /**
+     * Tell whether a file starts like a snapshot. Files that can not be read
+     * are no snapshots; opening them as text reports the problem.
+     *
+     * @param src   Name of the file
+     * @return      true if the file starts with the magic number
+     */
+    public static boolean isSnapshot(String src) {
+        DataInputStream in; // the start of the file
+        boolean found; // the magic number was found
+
+        try {
+            in=new DataInputStream(new FileInputStream(src));
+            try {
+                found=(Integer.reverseBytes(in.readInt())==MAGIC);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            found=false;
+        }
+        return found;
+    }
+
+    /**
+     * Map a part of a file.
+     *
+     * @param c     Channel of the file
+     * @param mode  Whether to read or write
+     * @param p     Position of the first byte
+     * @param n     Number of bytes, at most WINDOW
+     * @return      The mapped bytes in little endian order
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static ByteBuffer map(FileChannel c, FileChannel.MapMode mode,
+                                            long p, long n) throws IOException {
+        return c.map(mode,p,n).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Copy ints from a file into an array, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first int in the file
+     * @param a     Array to fill completely
+     * @return      Position after the last int
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long get(FileChannel c, long p, int[] a)
+                                                        throws IOException {
+        int i,k; // position in a and ints per window
+
+        for(i=0;i<a.length;i+=k) {
+            k=Math.min(a.length-i,WINDOW/4);
+            map(c,FileChannel.MapMode.READ_ONLY,p+4L*i,4L*k).asIntBuffer()
+                                                                .get(a,i,k);
+        }
+        return p+4L*a.length;
+    }
+
+    /**
+     * Copy longs from a file into an array, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first long in the file
+     * @param a     Array to fill completely
+     * @return      Position after the last long
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long get(FileChannel c, long p, long[] a)
+                                                        throws IOException {
+        int i,k; // position in a and longs per window
+
+        for(i=0;i<a.length;i+=k) {
+            k=Math.min(a.length-i,WINDOW/8);
+            map(c,FileChannel.MapMode.READ_ONLY,p+8L*i,8L*k).asLongBuffer()
+                                                                .get(a,i,k);
+        }
+        return p+8L*a.length;
+    }
+
+    /**
+     * Copy bytes from a file into an array, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first byte in the file
+     * @param a     Array to fill completely
+     * @return      Position after the last byte
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long get(FileChannel c, long p, byte[] a)
+                                                        throws IOException {
+        int i,k; // position in a and bytes per window
+
+        for(i=0;i<a.length;i+=k) {
+            k=Math.min(a.length-i,WINDOW);
+            map(c,FileChannel.MapMode.READ_ONLY,p+i,k).get(a,i,k);
+        }
+        return p+a.length;
+    }
+
+    /**
+     * Copy the first n ints of an array into a file, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first int in the file
+     * @param a     Array to copy
+     * @param n     Number of ints to copy
+     * @return      Position after the last int
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long put(FileChannel c, long p, int[] a, int n)
+                                                        throws IOException {
+        int i,k; // position in a and ints per window
+
+        for(i=0;i<n;i+=k) {
+            k=Math.min(n-i,WINDOW/4);
+            map(c,FileChannel.MapMode.READ_WRITE,p+4L*i,4L*k).asIntBuffer()
+                                                                .put(a,i,k);
+        }
+        return p+4L*n;
+    }
+
+    /**
+     * Copy the first n longs of an array into a file, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first long in the file
+     * @param a     Array to copy
+     * @param n     Number of longs to copy
+     * @return      Position after the last long
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long put(FileChannel c, long p, long[] a, int n)
+                                                        throws IOException {
+        int i,k; // position in a and longs per window
+
+        for(i=0;i<n;i+=k) {
+            k=Math.min(n-i,WINDOW/8);
+            map(c,FileChannel.MapMode.READ_WRITE,p+8L*i,8L*k).asLongBuffer()
+                                                                .put(a,i,k);
+        }
+        return p+8L*n;
+    }
+
+    /**
+     * Copy the first n bytes of an array into a file, one window at a time.
+     *
+     * @param c     Channel of the file
+     * @param p     Position of the first byte in the file
+     * @param a     Array to copy
+     * @param n     Number of bytes to copy
+     * @return      Position after the last byte
+     * @throws IOException Thrown when the file can not be mapped.
+     */
+    protected static long put(FileChannel c, long p, byte[] a, int n)
+                                                        throws IOException {
+        int i,k; // position in a and bytes per window
+
+        for(i=0;i<n;i+=k) {
+            k=Math.min(n-i,WINDOW);
+            map(c,FileChannel.MapMode.READ_WRITE,p+i,k).put(a,i,k);
+        }
+        return p+n;
+    }
+
+    /**
+     * Write a network to a snapshot file, replacing the file if it exists.
+     * Only the structure and the capacities are stored, not the flow.
+     *
+     * @param net   Network to store
+     * @param dst   Name of the file to write
+     * @throws IOException Thrown when the file can not be written.
+     */
+    public static void write(FlowNetwork net, String dst) throws IOException {
+        RandomAccessFile file; // the file to write
+        FileChannel c; // its channel
+        ByteBuffer header; // the header
+        byte[] pool; // the UTF-8 bytes of all names
+        int[] start; // position of every name in pool
+        byte[] name; // bytes of one name
+        long p; // position in the file
+        int v,size; // general purpose node and bytes used in pool
+
+        if (net.names==null) {
+            pool=net.namePool;
+            start=net.nameStart;
+            size=start[net.nodeCount];
+        } else {
+            pool=new byte[256];
+            start=new int[net.nodeCount+1];
+            size=0;
+            for(v=0;v<net.nodeCount;v++) {
+                name=net.names[v].getBytes(FlowNetwork.UTF8);
+                if (size+name.length>pool.length)
+                    pool=Arrays.copyOf(pool,
+                                    Math.max(2*pool.length,size+name.length));
+                System.arraycopy(name,0,pool,size,name.length);
+                size+=name.length;
+                start[v+1]=size;
+            }
+        }
+
+        file=new RandomAccessFile(dst,"rw");
+        try {
+            c=file.getChannel();
+            file.setLength(HEADER+4L*(net.nodeCount+1)+8L*net.arcCount+
+                        8L*net.arcCount+4L*(net.nodeCount+1)+size);
+            header=map(c,FileChannel.MapMode.READ_WRITE,0,HEADER);
+            header.putInt(MAGIC).putInt(VERSION);
+            header.putInt(net.nodeCount).putInt(net.arcCount);
+            header.putInt(net.source).putInt(net.sink);
+            header.putInt(size).putInt(0);
+
+            p=put(c,HEADER,net.first,net.nodeCount+1);
+            p=put(c,p,net.head,net.arcCount);
+            p=put(c,p,net.mate,net.arcCount);
+            p=put(c,p,net.capacity,net.arcCount);
+            p=put(c,p,start,net.nodeCount+1);
+            put(c,p,pool,size);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Load a network from a snapshot file. The arrays are checked enough to
+     * be sure no engine will run outside them, and every arc must have a
+     * reverse arc that leads back to the node it leaves.
+     *
+     * @param src   Name of the file to read
+     * @return      The network stored in the file, with the zero flow
+     * @throws IOException              Thrown when the file can not be read
+     *                                  or is not a snapshot of this version.
+     * @throws IllegalArgumentException Thrown when the arrays in the file do
+     *                                  not form a valid network.
+     */
+    public static FlowNetwork read(String src)
+                                throws IOException, IllegalArgumentException {
+        RandomAccessFile file; // the file to read
+        FileChannel c; // its channel
+        ByteBuffer header; // the header
+        int[] first,head,mate,start; // the int arrays
+        long[] capacity; // the arc capacities
+        byte[] pool; // the name bytes
+        long p; // position in the file
+        int n,m,s,t,size,v,a; // header values and general purpose counters
+
+        file=new RandomAccessFile(src,"r");
+        try {
+            c=file.getChannel();
+            if (c.size()<HEADER)
+                throw new IOException("Snapshot '"+src+"' is truncated");
+            header=map(c,FileChannel.MapMode.READ_ONLY,0,HEADER);
+            if (header.getInt()!=MAGIC)
+                throw new IOException("'"+src+"' is not a snapshot");
+            if ((v=header.getInt())!=VERSION)
+                throw new IOException("Snapshot '"+src+"' has version "+v+
+                                                    ", expected "+VERSION);
+            n=header.getInt();
+            m=header.getInt();
+            s=header.getInt();
+            t=header.getInt();
+            size=header.getInt();
+            if (n<2 || m<0 || size<0 || s<0 || s>=n || t<0 || t>=n || s==t)
+                throw new IllegalArgumentException(
+                        "Snapshot '"+src+"' has an invalid header");
+            if (c.size()!=HEADER+8L*(n+1)+16L*m+size)
+                throw new IOException("Snapshot '"+src+"' is truncated");
+
+            first=new int[n+1];
+            head=new int[m];
+            mate=new int[m];
+            capacity=new long[m];
+            start=new int[n+1];
+            pool=new byte[size];
+            p=get(c,HEADER,first);
+            p=get(c,p,head);
+            p=get(c,p,mate);
+            p=get(c,p,capacity);
+            p=get(c,p,start);
+            get(c,p,pool);
+        } finally {
+            file.close();
+        }
+
+        for(v=0;v<n;v++) {
+            if (first[v]>first[v+1] || start[v]>start[v+1])
+                throw new IllegalArgumentException(
+                        "Snapshot '"+src+"' has invalid offsets");
+        }
+        if (first[0]!=0 || first[n]!=m || start[0]!=0 || start[n]!=size)
+            throw new IllegalArgumentException(
+                    "Snapshot '"+src+"' has invalid offsets");
+        for(a=0;a<m;a++) {
+            if (head[a]<0 || head[a]>=n || mate[a]<0 || mate[a]>=m ||
+                                        mate[mate[a]]!=a || capacity[a]<0)
+                throw new IllegalArgumentException(
+                        "Snapshot '"+src+"' has an invalid arc");
+        }
+        for(v=0;v<n;v++) {
+            for(a=first[v];a<first[v+1];a++) {
+                if (head[mate[a]]!=v) // the reverse arc must lead back
+                    throw new IllegalArgumentException(
+                            "Snapshot '"+src+"' has an invalid arc");
+            }
+        }
+
+        return new FlowNetwork(s,t,first,head,mate,capacity,pool,start);
+    }
+}
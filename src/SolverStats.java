@@ -0,0 +1,289 @@
+// File: SolverStats.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.lang.management.*;
+import javax.management.*;
+
+/**
+ * Publishes the progress of the Graph solves through a platform MBean, so
+ * that a long solve can be followed with JConsole while it runs. Every
+ * solve, or every thread of a solve by components, counts into Counters of
+ * its own which no other thread writes to. The searches count in local
+ * variables and add to their Counters once per breadth first search, and
+ * the MBean only adds up the Counters when a client asks for a value, so
+ * the hot loops never wait for each other or for a client.
+ * <P>
+ * The MBean is only registered under NAME when publish() is called, for
+ * instance by Main with "-monitor": starting the platform MBean server
+ * takes a quarter of a second, far longer than solving a small graph.
+ * Until then the solves count just the same, without touching JMX.
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public class SolverStats implements SolverStatsMBean {
+    /**
+     * The name the MBean is registered under.
+     */
+    public static final String NAME="delftalization:type=SolverStats";
+    /**
+     * Index of the number of breadth first searches.
+     */
+    protected static final int PASSES=0;
+    /**
+     * Index of the number of augmenting paths.
+     */
+    protected static final int PATHS=1;
+    /**
+     * Index of the augmented flow.
+     */
+    protected static final int FLOW=2;
+    /**
+     * Index of the number of edges scanned.
+     */
+    protected static final int SCANNED=3;
+    /**
+     * Index of the number of nodes visited.
+     */
+    protected static final int VISITED=4;
+    /**
+     * Index of the nanoseconds spent searching.
+     */
+    protected static final int SEARCH=5;
+    /**
+     * Index of the nanoseconds spent augmenting.
+     */
+    protected static final int AUGMENT=6;
+    /**
+     * Index of the profit upper bound.
+     */
+    protected static final int BOUND=7;
+    /**
+     * Number of values counted.
+     */
+    protected static final int SIZE=8;
+    /**
+     * The only instance, created by get().
+     */
+    protected static SolverStats instance;
+    /**
+     * Whether the instance was registered by publish().
+     */
+    protected static boolean published;
+    /**
+     * The Counters of the solves running at the moment.
+     */
+    protected ArrayList<Counters> active;
+    /**
+     * Totals of the Counters closed already.
+     */
+    protected long[] closed;
+    /**
+     * Totals at the last reset().
+     */
+    protected long[] base;
+
+    /**
+     * The values counted by a single thread. Only the thread that opened
+     * them writes to them, so an addition does not have to be atomic; it
+     * is only made visible to the MBean, without a memory barrier.
+     */
+    public static class Counters {
+        /**
+         * The values, indexed by the constants of SolverStats.
+         */
+        protected AtomicLongArray value;
+
+        /**
+         * Constructor for the Counters class.
+         */
+        protected Counters() {
+            value=new AtomicLongArray(SIZE);
+        }
+
+        /**
+         * Add to a value.
+         *
+         * @param i     Index of the value
+         * @param v     Amount to add
+         */
+        protected void add(int i, long v) {
+            value.lazySet(i,value.get(i)+v);
+        }
+
+        /**
+         * Count a breadth first search.
+         *
+         * @param scanned   Edges looked at by the search
+         * @param visited   Nodes taken from the queue by the search
+         * @param nanos     Duration of the search
+         */
+        public void search(int scanned, int visited, long nanos) {
+            add(PASSES,1);
+            add(SCANNED,scanned);
+            add(VISITED,visited);
+            add(SEARCH,nanos);
+        }
+
+        /**
+         * Count an augmenting path.
+         *
+         * @param flow      Flow added along the path
+         * @param nanos     Duration of the augmentation
+         */
+        public void augment(long flow, long nanos) {
+            add(PATHS,1);
+            add(FLOW,flow);
+            add(AUGMENT,nanos);
+        }
+
+        /**
+         * Count the profit of a graph about to be solved.
+         *
+         * @param profit    The sum of the capacities leaving the source
+         */
+        public void bound(long profit) {
+            add(BOUND,profit);
+        }
+    }
+
+    /**
+     * Constructor for the SolverStats class.
+     */
+    protected SolverStats() {
+        active=new ArrayList<Counters>();
+        closed=new long[SIZE];
+        base=new long[SIZE];
+    }
+
+    /**
+     * Give the only instance, creating it the first time.
+     *
+     * @return      The SolverStats of this virtual machine
+     */
+    public static synchronized SolverStats get() {
+        if (instance==null) instance=new SolverStats();
+        return instance;
+    }
+
+    /**
+     * Register the only instance with the platform MBean server, so that
+     * JMX clients can follow the solves. Counts made before are included.
+     * When the server refuses it, counting goes on without being published.
+     *
+     * @return      true if the MBean is registered
+     */
+    public static synchronized boolean publish() {
+        if (published) return true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                                                get(),new ObjectName(NAME));
+            published=true;
+        } catch (JMException e) {
+            // Monitoring is no reason to stop solving
+        } catch (SecurityException e) {
+            // Monitoring is no reason to stop solving
+        }
+        return published;
+    }
+
+    /**
+     * Start counting for a thread.
+     *
+     * @return      Counters to be used by the calling thread only
+     */
+    public synchronized Counters open() {
+        Counters c; // the new counters
+
+        c=new Counters();
+        active.add(c);
+        return c;
+    }
+
+    /**
+     * Stop counting for a thread and keep its values in the totals.
+     *
+     * @param c     Counters returned by open()
+     */
+    public synchronized void close(Counters c) {
+        int i; // general purpose counter
+
+        if (!active.remove(c)) return;
+        for(i=0;i<SIZE;i++) closed[i]+=c.value.get(i);
+    }
+
+    /**
+     * Add up a value of the running solves.
+     *
+     * @param i     Index of the value
+     * @return      The sum over the active Counters
+     */
+    protected synchronized long running(int i) {
+        long v; // the sum
+
+        v=0;
+        for(Counters c : active) v+=c.value.get(i);
+        return v;
+    }
+
+    /**
+     * Add up a value since the last reset.
+     *
+     * @param i     Index of the value
+     * @return      The sum over all Counters ever opened, less the base
+     */
+    protected synchronized long total(int i) {
+        return closed[i]+running(i)-base[i];
+    }
+
+    public synchronized int getActiveSolves() {
+        return active.size();
+    }
+
+    public long getBfsPasses() {
+        return total(PASSES);
+    }
+
+    public long getAugmentingPaths() {
+        return total(PATHS);
+    }
+
+    public long getAugmentedFlow() {
+        return total(FLOW);
+    }
+
+    public long getEdgesScanned() {
+        return total(SCANNED);
+    }
+
+    public long getNodesVisited() {
+        return total(VISITED);
+    }
+
+    public long getFlow() {
+        return running(FLOW);
+    }
+
+    public long getProfitBound() {
+        return running(BOUND);
+    }
+
+    public long getFindPathMillis() {
+        return total(SEARCH)/1000000;
+    }
+
+    public long getAugmentPathMillis() {
+        return total(AUGMENT)/1000000;
+    }
+
+    public synchronized void reset() {
+        int i; // general purpose counter
+
+        for(i=0;i<SIZE;i++) base[i]=closed[i]+running(i);
+    }
+}
@@ -0,0 +1,72 @@
+// File: SolverStatsMBean.java
+// Package: delftalization
+//
+// Copyright (c) 2011 Michiel Meijer
+
+/**
+ * The management interface of SolverStats, shown by JConsole and other JMX
+ * clients under the name SolverStats.NAME once SolverStats.publish() was
+ * called. All totals count from the start of the virtual machine or the
+ * last reset().
+ *
+ * author  Michiel Meijer <m.meijer@cinis.com>
+ * @version 2011.0327
+ * @since   1.6
+ */
+public interface SolverStatsMBean {
+    /**
+     * @return  the number of Graph solves running at the moment
+     */
+    public int getActiveSolves();
+
+    /**
+     * @return  the number of breadth first searches made
+     */
+    public long getBfsPasses();
+
+    /**
+     * @return  the number of augmenting paths found
+     */
+    public long getAugmentingPaths();
+
+    /**
+     * @return  the total flow added along the augmenting paths
+     */
+    public long getAugmentedFlow();
+
+    /**
+     * @return  the number of edges looked at by the searches
+     */
+    public long getEdgesScanned();
+
+    /**
+     * @return  the number of nodes taken from the queue by the searches
+     */
+    public long getNodesVisited();
+
+    /**
+     * @return  the flow pushed so far by the solves running at the moment
+     */
+    public long getFlow();
+
+    /**
+     * @return  the sum of the profits of the solves running at the moment,
+     *          which their flow can never exceed
+     */
+    public long getProfitBound();
+
+    /**
+     * @return  the time spent searching augmenting paths in milliseconds
+     */
+    public long getFindPathMillis();
+
+    /**
+     * @return  the time spent augmenting along the paths in milliseconds
+     */
+    public long getAugmentPathMillis();
+
+    /**
+     * Start counting all totals from zero again.
+     */
+    public void reset();
+}